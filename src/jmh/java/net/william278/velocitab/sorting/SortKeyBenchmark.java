@@ -0,0 +1,75 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.sorting;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures building a sort key from resolved sorting element values, comparing the original approach of joining,
+ * splitting and adapting the values as strings against appending each value to a reused buffer
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SortKeyBenchmark {
+
+    private static final String DELIMITER = ":::";
+
+    @Param({"100:::William278", "25:::Notch:::lobby", "0:::a_very_long_username"})
+    private String resolved;
+
+    private String[] values;
+    private String uuid;
+    private long uuidBits;
+    private final StringBuilder key = new StringBuilder(16);
+
+    @Setup
+    public void setup() {
+        this.values = resolved.split(DELIMITER, -1);
+        final UUID id = UUID.randomUUID();
+        this.uuid = id.toString();
+        this.uuidBits = id.getMostSignificantBits();
+    }
+
+    @Benchmark
+    public String legacy() {
+        return LegacySortKey.of(resolved) + uuid.substring(0, 4);
+    }
+
+    @Benchmark
+    public String extractors() {
+        key.setLength(0);
+        for (String value : values) {
+            if (key.length() > 12) {
+                break;
+            }
+            SortingManager.appendValue(value, key);
+        }
+        if (key.length() > 12) {
+            key.setLength(12);
+        }
+        SortingManager.appendBits(uuidBits >>> 4, 4, key);
+        return key.toString();
+    }
+
+}
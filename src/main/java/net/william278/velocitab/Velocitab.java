@@ -36,7 +36,11 @@ import net.william278.desertwell.util.UpdateChecker;
 import net.william278.desertwell.util.Version;
 import net.william278.velocitab.api.VelocitabAPI;
 import net.william278.velocitab.commands.VelocitabCommand;
+import net.william278.velocitab.config.ConfigDiff;
 import net.william278.velocitab.config.Formatter;
+import net.william278.velocitab.config.PlaceholderTemplate;
+import net.william278.velocitab.config.RuntimeConfig;
+import net.william278.velocitab.config.ServerGroupIndex;
 import net.william278.velocitab.config.Settings;
 import net.william278.velocitab.hook.Hook;
 import net.william278.velocitab.hook.LuckPermsHook;
@@ -64,7 +68,7 @@ import java.util.concurrent.TimeUnit;
 @Plugin(id = "velocitab")
 public class Velocitab {
     private static final int METRICS_ID = 18247;
-    private Settings settings;
+    private volatile RuntimeConfig runtimeConfig;
     private final ProxyServer server;
     private final Logger logger;
     private final Path dataDirectory;
@@ -118,7 +122,17 @@ public class Velocitab {
 
     @NotNull
     public Settings getSettings() {
-        return settings;
+        return runtimeConfig.getSettings();
+    }
+
+    /**
+     * Get the snapshot of the configuration compiled when the settings were last loaded
+     *
+     * @return the runtime config
+     */
+    @NotNull
+    public RuntimeConfig getRuntimeConfig() {
+        return runtimeConfig;
     }
 
     @NotNull
@@ -126,20 +140,40 @@ public class Velocitab {
         return getSettings().getFormatter();
     }
 
-    public void loadSettings() {
+    @NotNull
+    public ServerGroupIndex getServerGroupIndex() {
+        return runtimeConfig.getServerGroupIndex();
+    }
+
+    /**
+     * Rebuild the {@link ServerGroupIndex} from the current settings and registered servers
+     */
+    public synchronized void rebuildServerGroupIndex() {
+        this.runtimeConfig = runtimeConfig.withServers(server.getAllServers());
+    }
+
+    /**
+     * Load the settings from the config file and publish them as a new {@link RuntimeConfig}
+     *
+     * @return the differences from the previously loaded config, or {@link ConfigDiff#ALL} if there was none;
+     * or {@link ConfigDiff#NONE} if the config failed to load
+     */
+    @NotNull
+    public synchronized ConfigDiff loadSettings() {
         try {
-            settings = Annotaml.create(
+            final Settings settings = Annotaml.create(
                     new File(dataDirectory.toFile(), "config.yml"),
                     new Settings(this)
             ).get();
 
-            settings.getNametags().values().stream()
-                    .filter(nametag -> !nametag.contains("%username%")).forEach(nametag -> {
-                        logger.warn("Nametag '" + nametag + "' does not contain %username% - removing");
-                        settings.getNametags().remove(nametag);
-                    });
+            final RuntimeConfig previous = this.runtimeConfig;
+            final RuntimeConfig compiled = RuntimeConfig.compile(this, settings, server.getAllServers());
+            this.runtimeConfig = compiled;
+            PlaceholderTemplate.retainAll(compiled.getAllFormats());
+            return previous != null ? compiled.diff(previous, server.getAllServers()) : ConfigDiff.ALL;
         } catch (IOException | InvocationTargetException | InstantiationException | IllegalAccessException e) {
             logger.error("Failed to load config file: " + e.getMessage(), e);
+            return ConfigDiff.NONE;
         }
     }
 
@@ -168,14 +202,14 @@ public class Velocitab {
     }
 
     private void prepareScoreboardManager() {
-        if (settings.isSendScoreboardPackets()) {
+        if (getSettings().isSendScoreboardPackets()) {
             this.scoreboardManager = new ScoreboardManager(this);
             scoreboardManager.registerPacket();
         }
     }
 
     private void disableScoreboardManager() {
-        if (scoreboardManager != null && settings.isSendScoreboardPackets()) {
+        if (scoreboardManager != null && getSettings().isSendScoreboardPackets()) {
             scoreboardManager.close();
             scoreboardManager.unregisterPacket();
         }
@@ -241,8 +275,8 @@ public class Velocitab {
 
     private void registerMetrics() {
         final Metrics metrics = metricsFactory.make(this, METRICS_ID);
-        metrics.addCustomChart(new SimplePie("sort_players", () -> settings.isSortPlayers() ? "Enabled" : "Disabled"));
-        metrics.addCustomChart(new SimplePie("formatter_type", () -> settings.getFormatter().getName()));
+        metrics.addCustomChart(new SimplePie("sort_players", () -> getSettings().isSortPlayers() ? "Enabled" : "Disabled"));
+        metrics.addCustomChart(new SimplePie("formatter_type", () -> getSettings().getFormatter().getName()));
         metrics.addCustomChart(new SimplePie("using_luckperms", () -> getLuckPermsHook().isPresent() ? "Yes" : "No"));
         metrics.addCustomChart(new SimplePie("using_papiproxybridge", () -> getPAPIProxyBridgeHook().isPresent() ? "Yes" : "No"));
         metrics.addCustomChart(new SimplePie("using_miniplaceholders", () -> getMiniPlaceholdersHook().isPresent() ? "Yes" : "No"));
@@ -101,7 +101,7 @@ import java.util.Optional;
     public void setCustomPlayerName(@NotNull Player player, @Nullable String name) {
         getUser(player).ifPresent(tabPlayer -> {
             tabPlayer.setCustomName(name);
-            plugin.getTabList().updatePlayerDisplayName(tabPlayer);
+            plugin.getTabList().updateDirtyOutputs(tabPlayer);
         });
     }
 
@@ -27,10 +27,13 @@ import com.velocitypowered.api.command.BrigadierCommand;
 import com.velocitypowered.api.command.CommandSource;
 import com.velocitypowered.api.proxy.Player;
 import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
 import net.kyori.adventure.text.format.TextColor;
 import net.william278.desertwell.about.AboutMenu;
 import net.william278.velocitab.Velocitab;
+import net.william278.velocitab.config.ComponentCache;
 import net.william278.velocitab.player.TabPlayer;
+import net.william278.velocitab.tab.UpdateStatistics;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.Optional;
@@ -92,7 +95,7 @@ public final class VelocitabCommand {
                                     }
 
                                     tabPlayer.get().setCustomName(name);
-                                    plugin.getTabList().updatePlayerDisplayName(tabPlayer.get());
+                                    plugin.getTabList().updateDirtyOutputs(tabPlayer.get());
 
                                     return Command.SINGLE_SUCCESS;
                                 })
@@ -101,14 +104,20 @@ public final class VelocitabCommand {
                 .then(LiteralArgumentBuilder.<CommandSource>literal("reload")
                         .requires(src -> src.hasPermission("velocitab.command.reload"))
                         .executes(ctx -> {
-                            plugin.loadSettings();
-                            plugin.getTabList().reloadUpdate();
+                            plugin.getTabList().reloadUpdate(plugin.loadSettings());
                             ctx.getSource().sendMessage(Component.text(
                                     "Velocitab has been reloaded!",
                                     MAIN_COLOR));
                             return Command.SINGLE_SUCCESS;
                         })
                 )
+                .then(LiteralArgumentBuilder.<CommandSource>literal("stats")
+                        .requires(src -> src.hasPermission("velocitab.command.stats"))
+                        .executes(ctx -> {
+                            sendStatistics(ctx.getSource());
+                            return Command.SINGLE_SUCCESS;
+                        })
+                )
                 .then(LiteralArgumentBuilder.<CommandSource>literal("update")
                         .requires(src -> src.hasPermission("velocitab.command.update"))
                         .executes(ctx -> {
@@ -132,4 +141,31 @@ public final class VelocitabCommand {
     private void sendAboutInfo(@NotNull CommandSource source) {
         source.sendMessage(aboutMenu.toComponent());
     }
+
+    private void sendStatistics(@NotNull CommandSource source) {
+        final UpdateStatistics.Cycle cycle = plugin.getTabList().getStatistics().getLastCycle();
+        source.sendMessage(Component.text("Last update cycle (#" + cycle.number() + "), "
+                + cycle.totalSkipped() + " recomputations skipped:", MAIN_COLOR));
+        for (TabPlayer.Output output : TabPlayer.Output.values()) {
+            final UpdateStatistics.Counts counts = cycle.get(output);
+            source.sendMessage(Component.text(" " + output.name().toLowerCase() + ": "
+                    + counts.skipped() + " skipped, " + counts.recomputed() + " recomputed, "
+                    + counts.sent() + " sent", NamedTextColor.GRAY));
+        }
+
+        final ComponentCache cache = plugin.getFormatter().getCache();
+        source.sendMessage(Component.text("Formatter cache (" + plugin.getFormatter().getName() + "):", MAIN_COLOR));
+        sendCacheStatistics(source, "components", cache.getComponentStats());
+        sendCacheStatistics(source, "legacy text", cache.getLegacyStats());
+
+        plugin.getScoreboardManager().ifPresent(manager -> source.sendMessage(Component.text(
+                "Teams: " + manager.getTeamCount() + " registered", MAIN_COLOR)));
+    }
+
+    private void sendCacheStatistics(@NotNull CommandSource source, @NotNull String name,
+                                     @NotNull ComponentCache.Stats stats) {
+        source.sendMessage(Component.text(" " + name + ": " + stats.size() + " cached, " + stats.hits() + " hits, "
+                + stats.misses() + " misses (" + Math.round(stats.hitRate() * 100) + "% hit rate)",
+                NamedTextColor.GRAY));
+    }
 }
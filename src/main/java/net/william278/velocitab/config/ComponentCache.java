@@ -0,0 +1,166 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.config;
+
+import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * A bounded, least-recently-used cache of parsed components and their legacy serializations, keyed by the
+ * text which was parsed.
+ * <p>
+ * The cache is bounded both by the number of entries and by the total length of the cached text, so a few very
+ * long headers cannot push its memory use far beyond that of many short display names.
+ */
+public final class ComponentCache {
+
+    private static final int MAX_ENTRIES = 4096;
+    private static final long MAX_WEIGHT = 1 << 20;
+
+    private final Tier<Component> components = new Tier<>(component -> 0);
+    private final Tier<String> legacy = new Tier<>(String::length);
+
+    /**
+     * Get the component parsed from the text, parsing and caching it if it is not cached
+     *
+     * @param text   the text to parse
+     * @param parser the function to parse the text with
+     * @return the parsed component
+     */
+    @NotNull
+    public Component getComponent(@NotNull String text, @NotNull Function<String, Component> parser) {
+        return components.get(text, parser);
+    }
+
+    /**
+     * Get the legacy section-symbol serialization of the component parsed from the text, computing and caching it
+     * if it is not cached
+     *
+     * @param text       the text to parse
+     * @param serializer the function to parse and serialize the text with
+     * @return the legacy text
+     */
+    @NotNull
+    public String getLegacy(@NotNull String text, @NotNull Function<String, String> serializer) {
+        return legacy.get(text, serializer);
+    }
+
+    /**
+     * Discard all cached components
+     */
+    public void clear() {
+        components.clear();
+        legacy.clear();
+    }
+
+    @NotNull
+    public Stats getComponentStats() {
+        return components.stats();
+    }
+
+    @NotNull
+    public Stats getLegacyStats() {
+        return legacy.stats();
+    }
+
+    /**
+     * Hit and miss counts of one tier of the cache
+     *
+     * @param hits   the number of lookups served from the cache
+     * @param misses the number of lookups which had to be computed
+     * @param size   the number of cached entries
+     */
+    public record Stats(long hits, long misses, int size) {
+
+        public double hitRate() {
+            final long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+    }
+
+    private static final class Tier<V> {
+
+        private final LinkedHashMap<String, V> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private final ToIntFunction<V> valueWeigher;
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private long weight;
+
+        private Tier(@NotNull ToIntFunction<V> valueWeigher) {
+            this.valueWeigher = valueWeigher;
+        }
+
+        @NotNull
+        private V get(@NotNull String key, @NotNull Function<String, V> loader) {
+            synchronized (this) {
+                final V cached = entries.get(key);
+                if (cached != null) {
+                    hits.incrementAndGet();
+                    return cached;
+                }
+            }
+
+            // Parse outside the lock; a concurrent miss on the same key only costs a duplicate parse
+            misses.incrementAndGet();
+            final V value = loader.apply(key);
+            synchronized (this) {
+                if (entries.put(key, value) == null) {
+                    weight += weigh(key, value);
+                }
+                evict();
+            }
+            return value;
+        }
+
+        private void evict() {
+            final Iterator<Map.Entry<String, V>> iterator = entries.entrySet().iterator();
+            while ((entries.size() > MAX_ENTRIES || weight > MAX_WEIGHT) && iterator.hasNext()) {
+                final Map.Entry<String, V> eldest = iterator.next();
+                weight -= weigh(eldest.getKey(), eldest.getValue());
+                iterator.remove();
+            }
+        }
+
+        // Approximate the memory used by an entry by the length of its text
+        private long weigh(@NotNull String key, @NotNull V value) {
+            return key.length() + valueWeigher.applyAsInt(value);
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+
+        @NotNull
+        private synchronized Stats stats() {
+            return new Stats(hits.get(), misses.get(), entries.size());
+        }
+
+    }
+
+}
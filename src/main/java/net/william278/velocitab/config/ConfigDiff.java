@@ -0,0 +1,80 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.config;
+
+import net.william278.velocitab.player.TabPlayer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The differences between two {@link RuntimeConfig} snapshots, describing which players' TAB list outputs have to be
+ * recomputed after a reload
+ *
+ * @param global  whether a setting affecting every player changed, such as the formatter
+ * @param teams   whether the sorting settings changed, so every player's team has to be recomputed
+ * @param groups  the outputs whose formats changed, by server group name
+ * @param servers the names of the servers whose group or display name changed
+ */
+public record ConfigDiff(boolean global, boolean teams, @NotNull Map<String, Set<TabPlayer.Output>> groups,
+                         @NotNull Set<String> servers) {
+
+    /**
+     * A diff recording that everything changed, for when there is no previous snapshot to compare with
+     */
+    public static final ConfigDiff ALL = new ConfigDiff(true, true, Map.of(), Set.of());
+    /**
+     * A diff recording that nothing changed
+     */
+    public static final ConfigDiff NONE = new ConfigDiff(false, false, Map.of(), Set.of());
+
+    /**
+     * Get the outputs which have to be recomputed for players on a server
+     *
+     * @param serverName the name of the server
+     * @param groupName  the name of the server's group
+     * @return the changed outputs
+     */
+    @NotNull
+    public Set<TabPlayer.Output> getChangedOutputs(@NotNull String serverName, @NotNull String groupName) {
+        if (global || servers.contains(serverName)) {
+            return EnumSet.allOf(TabPlayer.Output.class);
+        }
+
+        final Set<TabPlayer.Output> outputs = EnumSet.noneOf(TabPlayer.Output.class);
+        outputs.addAll(groups.getOrDefault(groupName, Set.of()));
+        if (teams) {
+            outputs.add(TabPlayer.Output.TEAM);
+        }
+        return outputs;
+    }
+
+    /**
+     * Returns whether nothing affecting the TAB list changed
+     *
+     * @return {@code true} if the snapshots are equivalent
+     */
+    public boolean isEmpty() {
+        return !global && !teams && groups.isEmpty() && servers.isEmpty();
+    }
+
+}
@@ -66,6 +66,10 @@ public enum Formatter {
      * Function to escape formatting characters in a string
      */
     private final Function<String, String> escaper;
+    /**
+     * Cache of components parsed by this formatter
+     */
+    private final ComponentCache cache = new ComponentCache();
 
     Formatter(@NotNull TriFunction<String, TabPlayer, Velocitab, Component> formatter, @NotNull Function<String, String> escaper,
               @NotNull String name) {
@@ -76,14 +80,42 @@ public enum Formatter {
 
     @NotNull
     public Component format(@NotNull String text, @NotNull TabPlayer player, @NotNull Velocitab plugin) {
-        return formatter.apply(text, player, plugin);
+        if (isPlayerDependent(plugin)) {
+            return formatter.apply(text, player, plugin);
+        }
+        return cache.getComponent(text, parsed -> formatter.apply(parsed, player, plugin));
     }
 
     @NotNull
     public String formatLegacySymbols(@NotNull String text, @NotNull TabPlayer player, @NotNull Velocitab plugin) {
-        return LegacyComponentSerializer.legacySection()
-                .serialize(format(text, player, plugin));
+        if (isPlayerDependent(plugin)) {
+            return LegacyComponentSerializer.legacySection().serialize(format(text, player, plugin));
+        }
+        return cache.getLegacy(text, parsed -> LegacyComponentSerializer.legacySection()
+                .serialize(format(parsed, player, plugin)));
+    }
+
+    /**
+     * Returns whether the output of this formatter can differ between players for the same input text,
+     * which is the case when MiniMessage is used alongside the MiniPlaceholders hook
+     *
+     * @param plugin the plugin instance
+     * @return {@code true} if formatting resolves additional per-player placeholders
+     */
+    public boolean isPlayerDependent(@NotNull Velocitab plugin) {
+        return this == MINIMESSAGE && plugin.getMiniPlaceholdersHook().isPresent();
     }
+
+    /**
+     * Get the cache of components parsed by this formatter
+     *
+     * @return the component cache
+     */
+    @NotNull
+    public ComponentCache getCache() {
+        return cache;
+    }
+
     @NotNull
     public String escape(@NotNull String text) {
         return escaper.apply(text);
@@ -24,63 +24,225 @@ import com.velocitypowered.api.proxy.server.RegisteredServer;
 import net.william278.velocitab.Velocitab;
 import net.william278.velocitab.player.TabPlayer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.event.Level;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
-import java.util.regex.Pattern;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 public enum Placeholder {
 
-    PLAYERS_ONLINE((plugin, player) -> Integer.toString(plugin.getServer().getPlayerCount())),
-    MAX_PLAYERS_ONLINE((plugin, player) -> Integer.toString(plugin.getServer().getConfiguration().getShowMaxPlayers())),
+    PLAYERS_ONLINE((plugin, player) -> Integer.toString(plugin.getServer().getPlayerCount()), Scope.GLOBAL, true),
+    MAX_PLAYERS_ONLINE((plugin, player) -> Integer.toString(plugin.getServer().getConfiguration().getShowMaxPlayers()), Scope.GLOBAL, false),
     LOCAL_PLAYERS_ONLINE((plugin, player) -> player.getPlayer().getCurrentServer()
             .map(ServerConnection::getServer)
             .map(RegisteredServer::getPlayersConnected)
             .map(players -> Integer.toString(players.size()))
-            .orElse("")),
-    CURRENT_DATE((plugin, player) -> DateTimeFormatter.ofPattern("dd MMM yyyy").format(LocalDateTime.now())),
-    CURRENT_TIME((plugin, player) -> DateTimeFormatter.ofPattern("HH:mm:ss").format(LocalDateTime.now())),
-    USERNAME((plugin, player) -> player.getCustomName().orElse(player.getPlayer().getUsername())),
-    SERVER((plugin, player) -> player.getServerDisplayName(plugin)),
-    PING((plugin, player) -> Long.toString(player.getPlayer().getPing())),
-    PREFIX((plugin, player) -> player.getRole().getPrefix().orElse("")),
-    SUFFIX((plugin, player) -> player.getRole().getSuffix().orElse("")),
-    ROLE((plugin, player) -> player.getRole().getName().orElse("")),
-    ROLE_DISPLAY_NAME((plugin, player) -> player.getRole().getDisplayName().orElse("")),
-    ROLE_WEIGHT((plugin, player) -> player.getRoleWeightString()),
-    SERVER_GROUP((plugin, player) -> player.getServerGroup(plugin)),
-    SERVER_GROUP_INDEX((plugin, player) -> Integer.toString(player.getServerGroupPosition(plugin))),
-    DEBUG_TEAM_NAME((plugin, player) -> plugin.getFormatter().escape(player.getLastTeamName().orElse("")));
+            .orElse(""), Scope.SERVER, true),
+    CURRENT_DATE((plugin, player) -> DateFormats.DATE.format(LocalDateTime.now()), Scope.GLOBAL, true),
+    CURRENT_TIME((plugin, player) -> DateFormats.TIME.format(LocalDateTime.now()), Scope.GLOBAL, true),
+    USERNAME((plugin, player) -> player.getCustomName().orElse(player.getPlayer().getUsername()), Scope.PLAYER, false),
+    SERVER((plugin, player) -> player.getServerDisplayName(plugin), Scope.SERVER, false),
+    PING((plugin, player) -> Long.toString(player.getPlayer().getPing()), Scope.PLAYER, true),
+    PREFIX((plugin, player) -> player.getRole().getPrefix().orElse(""), Scope.PLAYER, false),
+    SUFFIX((plugin, player) -> player.getRole().getSuffix().orElse(""), Scope.PLAYER, false),
+    ROLE((plugin, player) -> player.getRole().getName().orElse(""), Scope.PLAYER, false),
+    ROLE_DISPLAY_NAME((plugin, player) -> player.getRole().getDisplayName().orElse(""), Scope.PLAYER, false),
+    ROLE_WEIGHT((plugin, player) -> player.getRoleWeightString(), Scope.PLAYER, false),
+    SERVER_GROUP((plugin, player) -> player.getServerGroup(plugin), Scope.GROUP, false),
+    SERVER_GROUP_INDEX((plugin, player) -> Integer.toString(player.getServerGroupPosition(plugin)), Scope.GROUP, false),
+    DEBUG_TEAM_NAME((plugin, player) -> plugin.getFormatter().escape(player.getLastTeamName().orElse("")), Scope.PLAYER, true);
+
+    /**
+     * How long a shared value may be reused within one update cycle, in milliseconds
+     */
+    private static final long MAX_SHARED_VALUE_AGE = 1000;
+    private static volatile long cycle;
 
     /**
      * Function to replace placeholders with a real value
      */
     private final BiFunction<Velocitab, TabPlayer, String> replacer;
-    private final static Pattern pattern = Pattern.compile("%.*?%");
+    /**
+     * Whether the value of this placeholder can change without the player being marked dirty
+     */
+    private final boolean dynamic;
+    /**
+     * How widely the value of this placeholder is shared between players
+     */
+    private final Scope scope;
+    /**
+     * Values shared by players for the current update cycle, keyed by group or server name
+     */
+    private final Map<String, SharedValue> sharedValues = new ConcurrentHashMap<>();
+    private final static Map<String, Placeholder> byPlaceholder = Arrays.stream(values())
+            .collect(Collectors.toMap(Placeholder::getPlaceholder, Function.identity()));
 
-    Placeholder(@NotNull BiFunction<Velocitab, TabPlayer, String> replacer) {
+    Placeholder(@NotNull BiFunction<Velocitab, TabPlayer, String> replacer, @NotNull Scope scope, boolean dynamic) {
         this.replacer = replacer;
+        this.scope = scope;
+        this.dynamic = dynamic;
+    }
+
+    /**
+     * Get the placeholder as it is written in formats, for example {@code %username%}
+     *
+     * @return the placeholder string
+     */
+    @NotNull
+    public String getPlaceholder() {
+        return "%" + name().toLowerCase() + "%";
+    }
+
+    /**
+     * Get the value of this placeholder for a player.
+     * <p>
+     * Values which do not depend on the player are computed once per update cycle and shared by every player
+     * in the same {@link Scope}.
+     *
+     * @param plugin the plugin instance
+     * @param player the player to get the value for
+     * @return the value of the placeholder
+     */
+    @NotNull
+    public String getValue(@NotNull Velocitab plugin, @NotNull TabPlayer player) {
+        final String key = switch (scope) {
+            case GLOBAL -> "";
+            case GROUP -> player.getServerGroup(plugin);
+            case SERVER -> player.getServerName();
+            default -> null;
+        };
+        if (key == null) {
+            return replacer.apply(plugin, player);
+        }
+
+        final long currentCycle = cycle;
+        final long now = System.currentTimeMillis();
+        final SharedValue shared = sharedValues.get(key);
+        if (shared != null && shared.cycle() == currentCycle && now - shared.computedAt() < MAX_SHARED_VALUE_AGE) {
+            return shared.value();
+        }
+
+        final String value = replacer.apply(plugin, player);
+        sharedValues.put(key, new SharedValue(value, currentCycle, now));
+        return value;
+    }
+
+    /**
+     * Start a new update cycle, so that shared placeholder values are computed again when next used
+     */
+    public static void nextCycle() {
+        cycle++;
+    }
+
+    @NotNull
+    public Scope getScope() {
+        return scope;
+    }
+
+    /**
+     * Returns whether the value of this placeholder can change without the player being marked dirty
+     *
+     * @return {@code true} if the placeholder is dynamic
+     */
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    /**
+     * Get the internal placeholder written as the given text, for example {@code %username%}
+     *
+     * @param placeholder the placeholder text, including the enclosing {@code %} characters
+     * @return the placeholder, or {@code null} if it is not an internal placeholder
+     */
+    @Nullable
+    public static Placeholder byPlaceholder(@NotNull String placeholder) {
+        return byPlaceholder.get(placeholder);
+    }
+
+    /**
+     * Returns whether the value of a format may change between updates without the player being marked dirty;
+     * that is, if it contains dynamic internal placeholders (such as the player count or the time),
+     * PAPI placeholders, or is parsed with MiniPlaceholders
+     *
+     * @param format the format to check
+     * @param plugin the plugin instance
+     * @return {@code true} if the format has to be re-evaluated on every update
+     */
+    public static boolean isDynamic(@NotNull String format, @NotNull Velocitab plugin) {
+        if (plugin.getFormatter().isPlayerDependent(plugin)) {
+            return true;
+        }
+        return PlaceholderTemplate.of(format).isDynamic();
     }
 
     public static CompletableFuture<String> replace(@NotNull String format, @NotNull Velocitab plugin,
                                                     @NotNull TabPlayer player) {
-        for (Placeholder placeholder : values()) {
-            format = format.replace("%" + placeholder.name().toLowerCase() + "%", placeholder.replacer.apply(plugin, player));
-        }
-        final String replaced = format;
+        final PlaceholderTemplate template = PlaceholderTemplate.of(format);
+        final String replaced = template.render(plugin, player);
 
-        if (!pattern.matcher(replaced).find()) {
+        if (!template.hasExternalPlaceholders()) {
             return CompletableFuture.completedFuture(replaced);
         }
 
         return plugin.getPAPIProxyBridgeHook()
-                .map(hook -> hook.formatPlaceholders(replaced, player.getPlayer()))
+                .map(hook -> hook.formatPlaceholders(replaced, format, player.getPlayer()))
                 .orElse(CompletableFuture.completedFuture(replaced)).exceptionally(e -> {
                     plugin.log(Level.ERROR, "An error occurred whilst parsing placeholders: " + e.getMessage());
                     return replaced;
                 });
     }
+
+    /**
+     * How widely the value of a placeholder, or a format containing placeholders, is shared between players
+     */
+    public enum Scope {
+        /**
+         * The same for every player
+         */
+        GLOBAL,
+        /**
+         * The same for every player in a server group
+         */
+        GROUP,
+        /**
+         * The same for every player on a server
+         */
+        SERVER,
+        /**
+         * Specific to each player
+         */
+        PLAYER,
+        /**
+         * Resolved for each player by PAPIProxyBridge
+         */
+        EXTERNAL;
+
+        /**
+         * Get the narrower of this scope and another, for a format containing placeholders of both scopes
+         *
+         * @param other the other scope
+         * @return the narrower scope
+         */
+        @NotNull
+        public Scope and(@NotNull Scope other) {
+            return compareTo(other) >= 0 ? this : other;
+        }
+    }
+
+    private record SharedValue(@NotNull String value, long cycle, long computedAt) {
+    }
+
+    private static final class DateFormats {
+        private static final DateTimeFormatter DATE = DateTimeFormatter.ofPattern("dd MMM yyyy");
+        private static final DateTimeFormatter TIME = DateTimeFormatter.ofPattern("HH:mm:ss");
+    }
+
 }
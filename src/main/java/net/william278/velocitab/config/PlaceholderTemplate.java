@@ -0,0 +1,236 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.config;
+
+import net.william278.velocitab.Velocitab;
+import net.william278.velocitab.player.TabPlayer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A format string compiled into a list of literal text, internal {@link Placeholder} and external placeholder
+ * segments.
+ * <p>
+ * Templates are compiled once per format and cached; the formats in the config are compiled when the
+ * {@link RuntimeConfig} is built. Rendering only evaluates the internal placeholders which are present in the
+ * format, in a single pass. External {@code %placeholder%} segments are written out unchanged for PAPIProxyBridge
+ * to resolve, and are listed by {@link #getExternalPlaceholders()}.
+ */
+public final class PlaceholderTemplate {
+
+    private static final Map<String, PlaceholderTemplate> templates = new ConcurrentHashMap<>();
+    private static final ThreadLocal<StringBuilder> builder = ThreadLocal.withInitial(StringBuilder::new);
+
+    private final String format;
+    private final Object[] segments;
+    private final Set<Placeholder> placeholders;
+    private final List<String> externals;
+    // Also set if literal text around internal placeholders will form a PAPI placeholder once they are rendered
+    private final boolean externalPlaceholders;
+    private final boolean dynamic;
+    private final Placeholder.Scope scope;
+
+    private PlaceholderTemplate(@NotNull String format) {
+        final List<Object> compiled = new ArrayList<>();
+        final Set<Placeholder> found = EnumSet.noneOf(Placeholder.class);
+        final List<String> external = new ArrayList<>();
+        final StringBuilder literal = new StringBuilder();
+        final StringBuilder literals = new StringBuilder();
+
+        int index = 0;
+        while (index < format.length()) {
+            final int open = format.indexOf('%', index);
+            final int close = open < 0 ? -1 : format.indexOf('%', open + 1);
+            if (close < 0) {
+                literal.append(format, index, format.length());
+                break;
+            }
+
+            final String text = format.substring(open, close + 1);
+            final Placeholder placeholder = Placeholder.byPlaceholder(text);
+            if (placeholder == null && (close == open + 1 || opensInternal(format, close))) {
+                // An empty pair, or the closing '%' opens an internal placeholder, so this is literal text
+                literal.append(format, index, close);
+                index = close;
+                continue;
+            }
+
+            literal.append(format, index, open);
+            if (!literal.isEmpty()) {
+                compiled.add(literal.toString());
+                literals.append(literal);
+                literal.setLength(0);
+            }
+            if (placeholder != null) {
+                compiled.add(placeholder);
+                found.add(placeholder);
+            } else {
+                compiled.add(new External(text));
+                external.add(text);
+            }
+            index = close + 1;
+        }
+        if (!literal.isEmpty()) {
+            compiled.add(literal.toString());
+            literals.append(literal);
+        }
+
+        this.format = format;
+        this.segments = compiled.toArray();
+        this.placeholders = Collections.unmodifiableSet(found);
+        this.externals = List.copyOf(external);
+        this.externalPlaceholders = !external.isEmpty() || containsPlaceholder(literals);
+        this.dynamic = externalPlaceholders || found.stream().anyMatch(Placeholder::isDynamic);
+        this.scope = externalPlaceholders ? Placeholder.Scope.EXTERNAL : found.stream()
+                .map(Placeholder::getScope)
+                .reduce(Placeholder.Scope.GLOBAL, Placeholder.Scope::and);
+    }
+
+    /**
+     * Get the compiled template for a format, compiling it if it is not in the config and has not been used before
+     *
+     * @param format the format string
+     * @return the compiled template
+     */
+    @NotNull
+    public static PlaceholderTemplate of(@NotNull String format) {
+        return templates.computeIfAbsent(format, PlaceholderTemplate::new);
+    }
+
+    /**
+     * Discard the compiled templates of formats which are no longer used, for when the config has been reloaded.
+     * Templates of formats which are still in the config are kept.
+     *
+     * @param formats the formats in the config
+     */
+    public static void retainAll(@NotNull Set<String> formats) {
+        templates.keySet().retainAll(formats);
+    }
+
+    /**
+     * Render the template for a player, replacing internal placeholders with their values
+     *
+     * @param plugin the plugin instance
+     * @param player the player to render the template for
+     * @return the rendered text, which may still contain external placeholders
+     */
+    @NotNull
+    public String render(@NotNull Velocitab plugin, @NotNull TabPlayer player) {
+        if (placeholders.isEmpty()) {
+            return format;
+        }
+
+        final StringBuilder rendered = builder.get();
+        rendered.setLength(0);
+        for (Object segment : segments) {
+            if (segment instanceof Placeholder placeholder) {
+                rendered.append(placeholder.getValue(plugin, player));
+            } else if (segment instanceof External external) {
+                rendered.append(external.placeholder());
+            } else {
+                rendered.append((String) segment);
+            }
+        }
+        return rendered.toString();
+    }
+
+    /**
+     * Get the internal placeholders used in this template
+     *
+     * @return the set of placeholders
+     */
+    @NotNull
+    public Set<Placeholder> getPlaceholders() {
+        return placeholders;
+    }
+
+    /**
+     * Get the external placeholders in this template, which are left for PAPI to resolve, in order
+     *
+     * @return the external placeholders, including their enclosing {@code %} characters
+     */
+    @NotNull
+    public List<String> getExternalPlaceholders() {
+        return externals;
+    }
+
+    /**
+     * Returns whether the template contains placeholders which are not internal, and so must be resolved by PAPI
+     *
+     * @return {@code true} if the template has external placeholders
+     */
+    public boolean hasExternalPlaceholders() {
+        return externalPlaceholders;
+    }
+
+    /**
+     * Returns whether the rendered template can change without the player being marked dirty;
+     * that is, if it contains dynamic internal placeholders or external placeholders
+     *
+     * @return {@code true} if the template is dynamic
+     */
+    public boolean isDynamic() {
+        return dynamic;
+    }
+
+    /**
+     * Get the narrowest scope of the placeholders in this template; that is, which players will be shown
+     * the same rendered text
+     *
+     * @return the scope of the template
+     */
+    @NotNull
+    public Placeholder.Scope getScope() {
+        return scope;
+    }
+
+    @NotNull
+    public String getFormat() {
+        return format;
+    }
+
+    // Whether the '%' at an index opens an internal placeholder
+    private static boolean opensInternal(@NotNull String format, int index) {
+        final int close = format.indexOf('%', index + 1);
+        return close >= 0 && Placeholder.byPlaceholder(format.substring(index, close + 1)) != null;
+    }
+
+    // Whether the text contains a %placeholder%, matching the "%.*?%" pattern used for PAPI placeholders
+    private static boolean containsPlaceholder(@NotNull CharSequence text) {
+        int percents = 0;
+        for (int i = 0; i < text.length() && percents < 2; i++) {
+            if (text.charAt(i) == '%') {
+                percents++;
+            }
+        }
+        return percents >= 2;
+    }
+
+    /**
+     * A placeholder segment which is not internal, written out unchanged to be resolved by PAPI
+     *
+     * @param placeholder the placeholder, including its enclosing {@code %} characters
+     */
+    private record External(@NotNull String placeholder) {
+    }
+
+}
@@ -0,0 +1,408 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.config;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import net.william278.velocitab.Velocitab;
+import net.william278.velocitab.player.TabPlayer;
+import org.apache.commons.text.StringEscapeUtils;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.event.Level;
+
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * An immutable snapshot of the configuration used at runtime, compiled from the {@link Settings} when they are
+ * loaded.
+ * <p>
+ * Formats are validated, unescaped and compiled into {@link PlaceholderTemplate}s once when the snapshot is
+ * compiled, so reading and rendering them never parses the format again. A new snapshot is published in one step
+ * on reload, so a reload is never observed half-applied.
+ */
+public final class RuntimeConfig {
+
+    /**
+     * Shortest time a header or footer frame can be shown for, in milliseconds
+     */
+    private static final long MIN_FRAME_INTERVAL = 200;
+    /**
+     * Time each frame is shown for if no interval is configured and there is no update rate, in milliseconds
+     */
+    private static final long DEFAULT_FRAME_INTERVAL = 1000;
+    /**
+     * Shortest time between periodic updates of an output, in milliseconds
+     */
+    private static final long MIN_UPDATE_RATE = 200;
+
+    private final Settings settings;
+    private final ServerGroupIndex serverGroupIndex;
+    private final Map<String, GroupFormats> formats;
+    private final GroupFormats defaultFormats;
+    private final Set<String> animatedGroups;
+    private final Map<String, long[]> updateRates;
+    private final long[] defaultUpdateRates;
+    private final Map<String, String> serverDisplayNames;
+    private final List<String> sortingElements;
+    private final boolean nametags;
+
+    private RuntimeConfig(@NotNull Settings settings, @NotNull ServerGroupIndex serverGroupIndex,
+                          @NotNull Map<String, GroupFormats> formats, @NotNull GroupFormats defaultFormats,
+                          @NotNull Map<String, long[]> updateRates, @NotNull long[] defaultUpdateRates,
+                          @NotNull Map<String, String> serverDisplayNames, @NotNull List<String> sortingElements,
+                          boolean nametags) {
+        this.settings = settings;
+        this.serverGroupIndex = serverGroupIndex;
+        this.formats = formats;
+        this.defaultFormats = defaultFormats;
+        this.updateRates = updateRates;
+        this.defaultUpdateRates = defaultUpdateRates;
+        this.animatedGroups = formats.entrySet().stream()
+                .filter(entry -> entry.getValue().headers().size() > 1 || entry.getValue().footers().size() > 1)
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toUnmodifiableSet());
+        this.serverDisplayNames = serverDisplayNames;
+        this.sortingElements = sortingElements;
+        this.nametags = nametags;
+    }
+
+    /**
+     * Compile a snapshot of the settings
+     *
+     * @param plugin   the plugin instance, used to log invalid settings
+     * @param settings the loaded settings
+     * @param servers  the servers currently registered on the proxy
+     * @return the compiled snapshot
+     */
+    @NotNull
+    public static RuntimeConfig compile(@NotNull Velocitab plugin, @NotNull Settings settings,
+                                        @NotNull Collection<RegisteredServer> servers) {
+        final Map<String, String> nametags = new HashMap<>();
+        settings.getNametags().forEach((group, nametag) -> {
+            if (!nametag.contains("%username%")) {
+                plugin.log(Level.WARN, "Nametag '" + nametag + "' does not contain %username% - removing");
+                return;
+            }
+            nametags.put(group, unescape(nametag));
+        });
+
+        final long defaultInterval = settings.getUpdateRate() > 0
+                ? Math.max(MIN_FRAME_INTERVAL, settings.getUpdateRate()) : DEFAULT_FRAME_INTERVAL;
+        final GroupFormats defaults = new GroupFormats(List.of(""), List.of(""), "%username%", "",
+                defaultInterval, defaultInterval);
+
+        final Set<String> groups = new HashSet<>();
+        groups.addAll(settings.getHeaders().keySet());
+        groups.addAll(settings.getFooters().keySet());
+        groups.addAll(settings.getFormats().keySet());
+        groups.addAll(nametags.keySet());
+
+        final Map<String, GroupFormats> formats = new HashMap<>();
+        for (String group : groups) {
+            formats.put(group, new GroupFormats(
+                    unescape(settings.getHeaders().getOrDefault(group, defaults.headers())),
+                    unescape(settings.getFooters().getOrDefault(group, defaults.footers())),
+                    unescape(settings.getFormats().getOrDefault(group, defaults.format())),
+                    nametags.getOrDefault(group, defaults.nametag()),
+                    getFrameInterval(settings.getHeaderFrameIntervals(), group, defaultInterval),
+                    getFrameInterval(settings.getFooterFrameIntervals(), group, defaultInterval)
+            ));
+        }
+
+        final long defaultRate = settings.getUpdateRate() > 0 ? Math.max(MIN_UPDATE_RATE, settings.getUpdateRate()) : 0;
+        final long[] defaultRates = new long[ScheduledOutput.values().length];
+        for (ScheduledOutput output : ScheduledOutput.values()) {
+            defaultRates[output.ordinal()] = output == ScheduledOutput.LATENCY ? 0 : defaultRate;
+        }
+        final Map<String, long[]> updateRates = new HashMap<>();
+        settings.getUpdateRates().forEach((group, rates) -> {
+            final long[] groupRates = defaultRates.clone();
+            rates.forEach((key, rate) -> ScheduledOutput.byKey(key).ifPresentOrElse(
+                    output -> groupRates[output.ordinal()] = rate > 0 ? Math.max(MIN_UPDATE_RATE, rate) : 0,
+                    () -> plugin.log(Level.WARN, "Unknown output '" + key + "' in update rates for group " + group)
+            ));
+            updateRates.put(group, groupRates);
+        });
+
+        final RuntimeConfig config = new RuntimeConfig(settings, ServerGroupIndex.build(settings, servers),
+                Map.copyOf(formats), defaults, Map.copyOf(updateRates), defaultRates,
+                Map.copyOf(settings.getServerDisplayNames()), List.copyOf(settings.getSortingElements()),
+                !nametags.isEmpty());
+        config.getAllFormats().forEach(PlaceholderTemplate::of);
+        return config;
+    }
+
+    /**
+     * Get a copy of this snapshot with the server group index rebuilt, for when a server has been registered
+     *
+     * @param servers the servers currently registered on the proxy
+     * @return the updated snapshot
+     */
+    @NotNull
+    public RuntimeConfig withServers(@NotNull Collection<RegisteredServer> servers) {
+        return new RuntimeConfig(settings, ServerGroupIndex.build(settings, servers), formats, defaultFormats,
+                updateRates, defaultUpdateRates, serverDisplayNames, sortingElements, nametags);
+    }
+
+    /**
+     * Compare this snapshot with the one it replaces, to find which players are affected by a reload
+     *
+     * @param previous the snapshot this one replaces
+     * @param servers  the servers currently registered on the proxy
+     * @return the differences between the snapshots
+     */
+    @NotNull
+    public ConfigDiff diff(@NotNull RuntimeConfig previous, @NotNull Collection<RegisteredServer> servers) {
+        final Settings old = previous.settings;
+        final boolean global = old.getFormatter() != settings.getFormatter()
+                || old.isOnlyListPlayersInSameGroup() != settings.isOnlyListPlayersInSameGroup();
+        final boolean teams = !previous.sortingElements.equals(sortingElements)
+                || old.isSortPlayers() != settings.isSortPlayers()
+                || old.isRemoveNametags() != settings.isRemoveNametags()
+                || previous.nametags != nametags;
+
+        final Set<String> groups = new HashSet<>(formats.keySet());
+        groups.addAll(previous.formats.keySet());
+        final Map<String, Set<TabPlayer.Output>> changedGroups = new HashMap<>();
+        for (String group : groups) {
+            final GroupFormats before = previous.getFormats(group);
+            final GroupFormats after = getFormats(group);
+            final Set<TabPlayer.Output> outputs = EnumSet.noneOf(TabPlayer.Output.class);
+            if (!before.headers().equals(after.headers()) || !before.footers().equals(after.footers())
+                    || before.headerInterval() != after.headerInterval()
+                    || before.footerInterval() != after.footerInterval()) {
+                outputs.add(TabPlayer.Output.HEADER_FOOTER);
+            }
+            if (!before.format().equals(after.format())) {
+                outputs.add(TabPlayer.Output.DISPLAY_NAME);
+            }
+            if (!before.nametag().equals(after.nametag())) {
+                outputs.add(TabPlayer.Output.TEAM);
+            }
+            if (!outputs.isEmpty()) {
+                changedGroups.put(group, outputs);
+            }
+        }
+
+        final Set<String> changedServers = new HashSet<>();
+        servers.forEach(server -> {
+            final String name = server.getServerInfo().getName();
+            if (!Objects.equals(previous.serverGroupIndex.getGroup(name), serverGroupIndex.getGroup(name))
+                    || !previous.getServerDisplayName(name).equals(getServerDisplayName(name))) {
+                changedServers.add(name);
+            }
+        });
+
+        return new ConfigDiff(global, teams, changedGroups, changedServers);
+    }
+
+    /**
+     * Get every format in this snapshot, including header and footer frames, the formats of groups without their
+     * own, and sorting elements
+     *
+     * @return the set of formats
+     */
+    @NotNull
+    public Set<String> getAllFormats() {
+        final Set<String> all = new HashSet<>(sortingElements);
+        Stream.concat(formats.values().stream(), Stream.of(defaultFormats)).forEach(group -> {
+            all.addAll(group.headers());
+            all.addAll(group.footers());
+            all.add(group.format());
+            all.add(group.nametag());
+        });
+        return all;
+    }
+
+    @NotNull
+    public Settings getSettings() {
+        return settings;
+    }
+
+    @NotNull
+    public ServerGroupIndex getServerGroupIndex() {
+        return serverGroupIndex;
+    }
+
+    @NotNull
+    public String getHeader(@NotNull String serverGroup, int index) {
+        return getFrame(getFormats(serverGroup).headers(), index);
+    }
+
+    @NotNull
+    public String getFooter(@NotNull String serverGroup, int index) {
+        return getFrame(getFormats(serverGroup).footers(), index);
+    }
+
+    /**
+     * Get the header frame a server group shows at a point in time. Frames are picked from a clock shared by every
+     * player in the group, so they all see the same frame at the same time.
+     *
+     * @param serverGroup the name of the server group
+     * @param time        the time, in milliseconds since the epoch
+     * @return the index of the frame
+     */
+    public int getHeaderFrame(@NotNull String serverGroup, long time) {
+        final GroupFormats group = getFormats(serverGroup);
+        return getFrameIndex(group.headers().size(), group.headerInterval(), time);
+    }
+
+    /**
+     * Get the footer frame a server group shows at a point in time
+     *
+     * @param serverGroup the name of the server group
+     * @param time        the time, in milliseconds since the epoch
+     * @return the index of the frame
+     * @see #getHeaderFrame(String, long)
+     */
+    public int getFooterFrame(@NotNull String serverGroup, long time) {
+        final GroupFormats group = getFormats(serverGroup);
+        return getFrameIndex(group.footers().size(), group.footerInterval(), time);
+    }
+
+    /**
+     * Get the names of the server groups with more than one header or footer frame
+     *
+     * @return the animated server groups
+     */
+    @NotNull
+    public Set<String> getAnimatedGroups() {
+        return animatedGroups;
+    }
+
+    /**
+     * Get how often an output of the TAB list is periodically updated for a server group
+     *
+     * @param serverGroup the name of the server group
+     * @param output      the output
+     * @return the time between updates in milliseconds, or {@code 0} if the output is only updated when it changes
+     */
+    public long getUpdateRate(@NotNull String serverGroup, @NotNull ScheduledOutput output) {
+        return updateRates.getOrDefault(serverGroup, defaultUpdateRates)[output.ordinal()];
+    }
+
+    public int getHeaderListSize(@NotNull String serverGroup) {
+        return getFormats(serverGroup).headers().size();
+    }
+
+    public int getFooterListSize(@NotNull String serverGroup) {
+        return getFormats(serverGroup).footers().size();
+    }
+
+    @NotNull
+    public String getFormat(@NotNull String serverGroup) {
+        return getFormats(serverGroup).format();
+    }
+
+    @NotNull
+    public String getNametag(@NotNull String serverGroup) {
+        return getFormats(serverGroup).nametag();
+    }
+
+    public boolean doNametags() {
+        return nametags;
+    }
+
+    /**
+     * Get display name for the server
+     *
+     * @param serverName The server name
+     * @return The display name, or the server name if no display name is defined
+     */
+    @NotNull
+    public String getServerDisplayName(@NotNull String serverName) {
+        return serverDisplayNames.getOrDefault(serverName, serverName);
+    }
+
+    @NotNull
+    public List<String> getSortingElements() {
+        return sortingElements;
+    }
+
+    @NotNull
+    private GroupFormats getFormats(@NotNull String serverGroup) {
+        return formats.getOrDefault(serverGroup, defaultFormats);
+    }
+
+    private static int getFrameIndex(int frames, long interval, long time) {
+        return frames > 1 ? (int) ((time / interval) % frames) : 0;
+    }
+
+    private static long getFrameInterval(@NotNull Map<String, Integer> intervals, @NotNull String group,
+                                         long defaultInterval) {
+        final Integer interval = intervals.get(group);
+        return interval != null ? Math.max(MIN_FRAME_INTERVAL, interval) : defaultInterval;
+    }
+
+    @NotNull
+    private static String getFrame(@NotNull List<String> frames, int index) {
+        return frames.isEmpty() ? "" : frames.get(Math.max(0, Math.min(index, frames.size() - 1)));
+    }
+
+    @NotNull
+    private static String unescape(@NotNull String text) {
+        return StringEscapeUtils.unescapeJava(text);
+    }
+
+    @NotNull
+    private static List<String> unescape(@NotNull List<String> texts) {
+        return texts.stream().map(RuntimeConfig::unescape).toList();
+    }
+
+    /**
+     * The unescaped formats of a server group
+     *
+     * @param headers        the header frames
+     * @param footers        the footer frames
+     * @param format         the player name format
+     * @param nametag        the nametag format, or an empty string if nametags are not shown
+     * @param headerInterval how long each header frame is shown for, in milliseconds
+     * @param footerInterval how long each footer frame is shown for, in milliseconds
+     */
+    private record GroupFormats(@NotNull List<String> headers, @NotNull List<String> footers,
+                                @NotNull String format, @NotNull String nametag,
+                                long headerInterval, long footerInterval) {
+    }
+
+    /**
+     * An output of the TAB list which is updated on its own schedule
+     */
+    public enum ScheduledOutput {
+        HEADER,
+        FOOTER,
+        DISPLAY_NAMES,
+        NAMETAGS,
+        SORTING,
+        LATENCY;
+
+        /**
+         * Get an output by its key in the config, for example {@code display_names}
+         *
+         * @param key the config key
+         * @return the output, if there is one with the key
+         */
+        @NotNull
+        public static Optional<ScheduledOutput> byKey(@NotNull String key) {
+            return Arrays.stream(values()).filter(output -> output.name().equalsIgnoreCase(key)).findFirst();
+        }
+    }
+
+}
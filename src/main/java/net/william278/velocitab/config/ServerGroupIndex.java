@@ -0,0 +1,154 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.config;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An immutable index of the configured server groups, compiled from the {@link Settings} and the servers registered
+ * on the proxy, so that group lookups for a server are constant time.
+ * <p>
+ * A new index is built whenever the settings are loaded, or when a server which was not registered at the time the
+ * index was built is encountered.
+ */
+public final class ServerGroupIndex {
+
+    private final Map<String, Group> groupsByServer;
+    private final Map<String, Integer> ordinals;
+    private final String fallbackGroupName;
+    @Nullable
+    private final Group fallbackGroup;
+
+    private ServerGroupIndex(@NotNull Map<String, Group> groupsByServer, @NotNull Map<String, Integer> ordinals,
+                             @NotNull String fallbackGroupName, @Nullable Group fallbackGroup) {
+        this.groupsByServer = groupsByServer;
+        this.ordinals = ordinals;
+        this.fallbackGroupName = fallbackGroupName;
+        this.fallbackGroup = fallbackGroup;
+    }
+
+    /**
+     * Compile an index of server groups
+     *
+     * @param settings the settings defining the server groups
+     * @param servers  the servers currently registered on the proxy
+     * @return the compiled index
+     */
+    @NotNull
+    public static ServerGroupIndex build(@NotNull Settings settings, @NotNull Collection<RegisteredServer> servers) {
+        final Map<String, RegisteredServer> registered = new HashMap<>();
+        servers.forEach(server -> registered.put(server.getServerInfo().getName(), server));
+
+        final Map<String, Group> groupsByServer = new HashMap<>();
+        final Map<String, Integer> ordinals = new HashMap<>();
+        int ordinal = 0;
+        for (Map.Entry<String, List<String>> entry : settings.getServerGroups().entrySet()) {
+            ordinals.put(entry.getKey(), ordinal);
+            final List<String> serverNames = List.copyOf(new LinkedHashSet<>(entry.getValue()));
+            final Group group = new Group(entry.getKey(), ordinal++, serverNames, serverNames.stream()
+                    .map(registered::get)
+                    .filter(Objects::nonNull)
+                    .toList(), false);
+
+            // The first group listing a server takes precedence
+            serverNames.forEach(server -> groupsByServer.putIfAbsent(server, group));
+        }
+
+        // All registered servers that are not in a group make up the fallback group
+        Group fallbackGroup = null;
+        if (settings.isFallbackEnabled()) {
+            final List<RegisteredServer> fallbackServers = registered.values().stream()
+                    .filter(server -> !groupsByServer.containsKey(server.getServerInfo().getName()))
+                    .sorted(Comparator.comparing(server -> server.getServerInfo().getName()))
+                    .toList();
+            fallbackGroup = new Group(settings.getFallbackGroup(),
+                    ordinals.getOrDefault(settings.getFallbackGroup(), -1),
+                    fallbackServers.stream().map(server -> server.getServerInfo().getName()).toList(),
+                    fallbackServers, true);
+        }
+
+        return new ServerGroupIndex(Map.copyOf(groupsByServer), Map.copyOf(ordinals),
+                settings.getFallbackGroup(), fallbackGroup);
+    }
+
+    /**
+     * Get the group a server is in
+     *
+     * @param serverName the name of the server
+     * @return the group of the server, the fallback group if it is not in one, or {@code null} if it is not in a
+     * group and the fallback group is disabled
+     */
+    @Nullable
+    public Group getGroup(@NotNull String serverName) {
+        final Group group = groupsByServer.get(serverName);
+        return group != null ? group : fallbackGroup;
+    }
+
+    /**
+     * Get the name of the group whose formats should be used for a server
+     *
+     * @param serverName the name of the server
+     * @return the name of the group the server is in, or the fallback group name if it is not in a group
+     */
+    @NotNull
+    public String getGroupName(@NotNull String serverName) {
+        final Group group = groupsByServer.get(serverName);
+        return group != null ? group.name() : fallbackGroupName;
+    }
+
+    /**
+     * Get the ordinal position of a server group
+     *
+     * @param groupName the name of the group
+     * @return the position of the group in the config, or {@code -1} if there is no such group
+     */
+    public int getOrdinal(@NotNull String groupName) {
+        return ordinals.getOrDefault(groupName, -1);
+    }
+
+    /**
+     * Returns whether a registered server was known when this index was built
+     *
+     * @param server the server to check
+     * @return {@code true} if the server's group is up-to-date in this index
+     */
+    public boolean isIndexed(@NotNull RegisteredServer server) {
+        final Group group = getGroup(server.getServerInfo().getName());
+        return group == null || group.servers().contains(server);
+    }
+
+    /**
+     * A compiled server group
+     *
+     * @param name        the name of the group, used to look up its formats
+     * @param ordinal     the position of the group in the config, or {@code -1} for an unlisted fallback group
+     * @param serverNames the names of the servers in the group
+     * @param servers     the servers in the group that are registered on the proxy
+     * @param fallback    whether this is the fallback group for servers not listed in any group
+     */
+    public record Group(@NotNull String name, int ordinal, @NotNull List<String> serverNames,
+                        @NotNull List<RegisteredServer> servers, boolean fallback) {
+    }
+
+}
@@ -24,7 +24,6 @@ import net.william278.annotaml.YamlComment;
 import net.william278.annotaml.YamlFile;
 import net.william278.annotaml.YamlKey;
 import net.william278.velocitab.Velocitab;
-import org.apache.commons.text.StringEscapeUtils;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.LinkedHashMap;
@@ -45,14 +44,16 @@ public class Settings {
     @YamlComment("Check for updates on startup")
     private boolean checkForUpdates = true;
 
+    @Getter
     @YamlKey("headers")
     @YamlComment("Header(s) to display above the TAB list for each server group."
-            + "\nList multiple headers and set update_rate to the number of ticks between frames for basic animations")
+            + "\nList multiple headers and set header_frame_intervals to the milliseconds between frames for basic animations")
     private Map<String, List<String>> headers = Map.of(
             "default",
             List.of("&rainbow&Running Velocitab by William278")
     );
 
+    @Getter
     @YamlKey("footers")
     @YamlComment("Footer(s) to display below the TAB list for each server group, same as headers.")
     private Map<String, List<String>> footers = Map.of(
@@ -60,6 +61,18 @@ public class Settings {
             List.of("[There are currently %players_online%/%max_players_online% players online](gray)")
     );
 
+    @Getter
+    @YamlKey("header_frame_intervals")
+    @YamlComment("How long in milliseconds to show each header frame for, for each server group with an animated header."
+            + "\nGroups not listed use the update_rate, or 1000ms if it is 0. The minimum interval is 200ms.")
+    private Map<String, Integer> headerFrameIntervals = Map.of();
+
+    @Getter
+    @YamlKey("footer_frame_intervals")
+    @YamlComment("How long in milliseconds to show each footer frame for, for each server group, same as headers.")
+    private Map<String, Integer> footerFrameIntervals = Map.of();
+
+    @Getter
     @YamlKey("formats")
     private Map<String, String> formats = Map.of("default", "&7[%server%] &f%prefix%%username%");
 
@@ -119,6 +132,12 @@ public class Settings {
     @YamlComment("How long in seconds to cache PAPI placeholders for, in milliseconds. (0 to disable)")
     private long papiCacheTime = 30000;
 
+    @Getter
+    @YamlKey("papi_request_timeout")
+    @YamlComment("How long in milliseconds to wait for PAPI placeholders before using their last known values instead."
+            + "\nThe request carries on in the background to refresh them. (0 to always wait)")
+    private long papiRequestTimeout = 1000;
+
     @Getter
     @YamlKey("enable_miniplaceholders_hook")
     @YamlComment("If you are using MINIMESSAGE formatting, enable this to support MiniPlaceholders in formatting.")
@@ -151,6 +170,15 @@ public class Settings {
             The minimal update rate is 200ms, anything lower will automatically be set to 200ms.""")
     private int updateRate = 0;
 
+    @Getter
+    @YamlKey("update_rates")
+    @YamlComment("""
+            How often in milliseconds to update each output of the TAB list, for each server group, overriding update_rate.
+            Outputs are header, footer, display_names, nametags, sorting and latency. Outputs and groups not listed
+            use the update_rate, except latency, which is not updated unless set here.
+            If set to 0, the output will only be updated when it changes. The minimal rate is 200ms.""")
+    private Map<String, Map<String, Integer>> updateRates = Map.of();
+
     public Settings(@NotNull Velocitab plugin) {
         this.serverGroups = new LinkedHashMap<>(Map.of("default",
                 plugin.getServer().getAllServers().stream().map(server -> server.getServerInfo().getName()).toList()
@@ -161,79 +189,6 @@ public class Settings {
     public Settings() {
     }
 
-    @NotNull
-    public String getHeader(@NotNull String serverGroup, int index) {
-        final List<String> groupHeaders = headers.getOrDefault(serverGroup, List.of(""));
-        return groupHeaders.isEmpty() ? "" : StringEscapeUtils.unescapeJava(groupHeaders
-                .get(Math.max(0, Math.min(index, getHeaderListSize(serverGroup) - 1))));
-    }
-
-    @NotNull
-    public String getFooter(@NotNull String serverGroup, int index) {
-        final List<String> groupFooters = footers.getOrDefault(serverGroup, List.of(""));
-        return groupFooters.isEmpty() ? "" : StringEscapeUtils.unescapeJava(groupFooters
-                .get(Math.max(0, Math.min(index, getFooterListSize(serverGroup) - 1))));
-    }
-
-    public int getHeaderListSize(@NotNull String serverGroup) {
-        return headers.getOrDefault(serverGroup, List.of("")).size();
-    }
-
-    public int getFooterListSize(@NotNull String serverGroup) {
-        return footers.getOrDefault(serverGroup, List.of("")).size();
-    }
-
-    @NotNull
-    public String getFormat(@NotNull String serverGroup) {
-        return StringEscapeUtils.unescapeJava(
-                formats.getOrDefault(serverGroup, "%username%"));
-    }
-
-    @NotNull
-    public String getNametag(@NotNull String serverGroup) {
-        return StringEscapeUtils.unescapeJava(
-                nametags.getOrDefault(serverGroup, ""));
-    }
-
-    public boolean doNametags() {
-        return !nametags.isEmpty();
-    }
-
-    /**
-     * Get display name for the server
-     *
-     * @param serverName The server name
-     * @return The display name, or the server name if no display name is defined
-     */
-    @NotNull
-    public String getServerDisplayName(@NotNull String serverName) {
-        return serverDisplayNames.getOrDefault(serverName, serverName);
-    }
-
-    /**
-     * Get the ordinal position of the server group
-     *
-     * @param serverGroupName The server group name
-     * @return The ordinal position of the server group
-     */
-    public int getServerGroupPosition(@NotNull String serverGroupName) {
-        return List.copyOf(serverGroups.keySet()).indexOf(serverGroupName);
-    }
-
-    /**
-     * Get the server group that a server is in
-     *
-     * @param serverName The name of the server
-     * @return The server group that the server is in, or "default" if the server is not in a group
-     */
-    @NotNull
-    public String getServerGroup(String serverName) {
-        return serverGroups.entrySet().stream()
-                .filter(entry -> entry.getValue().contains(serverName)).findFirst()
-                .map(Map.Entry::getKey)
-                .orElse(fallbackGroup);
-    }
-
     @NotNull
     public List<String> getSortingElements() {
         return sortingPlaceholders;
@@ -24,6 +24,7 @@ import net.luckperms.api.LuckPerms;
 import net.luckperms.api.LuckPermsProvider;
 import net.luckperms.api.cacheddata.CachedMetaData;
 import net.luckperms.api.event.EventSubscription;
+import net.luckperms.api.event.group.GroupDataRecalculateEvent;
 import net.luckperms.api.event.user.UserDataRecalculateEvent;
 import net.luckperms.api.model.group.Group;
 import net.luckperms.api.model.user.User;
@@ -34,33 +35,42 @@ import net.william278.velocitab.tab.PlayerTabList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
-import java.util.UUID;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class LuckPermsHook extends Hook {
 
+    /**
+     * How long to collect role changes for before applying them together, in milliseconds
+     */
+    private static final long ROLE_UPDATE_WINDOW = 500;
+
     private final LuckPerms api;
     private final EventSubscription<UserDataRecalculateEvent> event;
-    private final Map<UUID, Long> lastUpdate;
+    private final EventSubscription<GroupDataRecalculateEvent> groupEvent;
+    private final Set<UUID> pendingRoles;
+    private final AtomicBoolean roleUpdateScheduled;
 
     public LuckPermsHook(@NotNull Velocitab plugin) throws IllegalStateException {
         super(plugin);
         this.api = LuckPermsProvider.get();
-        lastUpdate = new HashMap<>();
+        this.pendingRoles = ConcurrentHashMap.newKeySet();
+        this.roleUpdateScheduled = new AtomicBoolean();
         event = api.getEventBus().subscribe(plugin, UserDataRecalculateEvent.class, this::onLuckPermsGroupUpdate);
+        groupEvent = api.getEventBus().subscribe(plugin, GroupDataRecalculateEvent.class, this::onLuckPermsGroupDataUpdate);
 
     }
 
     public void close() {
         event.close();
+        groupEvent.close();
     }
 
     @NotNull
     public Role getPlayerRole(@NotNull Player player) {
-        return getRoleFromMetadata(getUser(player.getUniqueId()).getCachedData().getMetaData());
+        return Role.intern(getRoleFromMetadata(getUser(player.getUniqueId()).getCachedData().getMetaData()));
     }
 
     @NotNull
@@ -78,29 +88,70 @@ public class LuckPermsHook extends Hook {
         );
     }
 
+    public void onLuckPermsGroupDataUpdate(@NotNull GroupDataRecalculateEvent event) {
+        // Queue every online player who inherits the group, directly or through other groups, as its weight,
+        // prefix or suffix may decide their role; their roles are then recomputed in one batch
+        final String groupName = event.getGroup().getName();
+        plugin.getServer().getAllPlayers().forEach(player -> {
+            final User user = getUser(player.getUniqueId());
+            if (user != null && inheritsGroup(user, groupName)) {
+                queueRoleUpdate(player.getUniqueId());
+            }
+        });
+    }
+
+    // Whether a user inherits a group, directly or through other groups
+    private boolean inheritsGroup(@NotNull User user, @NotNull String groupName) {
+        return groupName.equals(user.getPrimaryGroup()) || user.getInheritedGroups(user.getQueryOptions()).stream()
+                .anyMatch(group -> group.getName().equals(groupName));
+    }
+
     public void onLuckPermsGroupUpdate(@NotNull UserDataRecalculateEvent event) {
-        // Prevent duplicate events
-        if (lastUpdate.getOrDefault(event.getUser().getUniqueId(), 0L) > System.currentTimeMillis() - 100) {
+        queueRoleUpdate(event.getUser().getUniqueId());
+    }
+
+    // Queue a player's role to be recomputed; multiple updates for the same player within the window are merged
+    private void queueRoleUpdate(@NotNull UUID uuid) {
+        // Only track online players, so pending updates are bounded by the player count
+        if (plugin.getServer().getPlayer(uuid).isEmpty()) {
             return;
         }
-        lastUpdate.put(event.getUser().getUniqueId(), System.currentTimeMillis());
 
+        pendingRoles.add(uuid);
+        if (roleUpdateScheduled.compareAndSet(false, true)) {
+            plugin.getServer().getScheduler()
+                    .buildTask(plugin, this::applyPendingRoles)
+                    .delay(ROLE_UPDATE_WINDOW, TimeUnit.MILLISECONDS)
+                    .schedule();
+        }
+    }
+
+    // Apply all role changes collected in the window in one pass over the tab list
+    private void applyPendingRoles() {
+        roleUpdateScheduled.set(false);
+
+        // Players sharing a primary group, prefix and suffix share one role, computed once
+        final Map<RoleKey, Role> roles = new HashMap<>();
         final PlayerTabList tabList = plugin.getTabList();
-        plugin.getServer().getPlayer(event.getUser().getUniqueId())
-                .ifPresent(player -> plugin.getServer().getScheduler()
-                        .buildTask(plugin, () -> {
-                            final Optional<TabPlayer> tabPlayerOptional = tabList.getTabPlayer(player);
-                            if (tabPlayerOptional.isEmpty()) {
-                                return;
-                            }
-
-                            final TabPlayer tabPlayer = tabPlayerOptional.get();
-                            tabPlayer.setRole(getRoleFromMetadata(event.getData().getMetaData()));
-                            tabList.updatePlayerDisplayName(tabPlayer);
-                            tabList.recalculateVanishForPlayer(tabPlayer);
-                        })
-                        .delay(500, TimeUnit.MILLISECONDS)
-                        .schedule());
+        final List<TabPlayer> updated = new ArrayList<>();
+        pendingRoles.forEach(uuid -> {
+            pendingRoles.remove(uuid);
+            final User user = getUser(uuid);
+            if (user == null) {
+                return;
+            }
+            plugin.getServer().getPlayer(uuid).flatMap(tabList::getTabPlayer).ifPresent(tabPlayer -> {
+                final CachedMetaData metaData = user.getCachedData().getMetaData();
+                final RoleKey key = new RoleKey(metaData.getPrimaryGroup(), metaData.getPrefix(), metaData.getSuffix());
+                tabPlayer.setRole(roles.computeIfAbsent(key, k -> Role.intern(getRoleFromMetadata(metaData))));
+                updated.add(tabPlayer);
+            });
+        });
+
+        updated.forEach(tabPlayer -> {
+            tabList.updateDirtyOutputs(tabPlayer);
+            tabList.recalculateVanishForPlayer(tabPlayer);
+        });
     }
 
     // Get a group by name
@@ -116,9 +167,13 @@ public class LuckPermsHook extends Hook {
         return group.getWeight().orElse(Role.DEFAULT_WEIGHT);
     }
 
+    @Nullable
     private User getUser(@NotNull UUID uuid) {
         return api.getUserManager().getUser(uuid);
     }
 
+    private record RoleKey(@Nullable String primaryGroup, @Nullable String prefix, @Nullable String suffix) {
+    }
+
 
 }
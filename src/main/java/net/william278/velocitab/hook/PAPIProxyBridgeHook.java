@@ -23,22 +23,298 @@ import com.velocitypowered.api.proxy.Player;
 import net.william278.papiproxybridge.api.PlaceholderAPI;
 import net.william278.velocitab.Velocitab;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.event.Level;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
 
 public class PAPIProxyBridgeHook extends Hook {
 
+    /**
+     * How long to collect requests for before sending them, in milliseconds
+     */
+    private static final long BATCH_WINDOW = 20;
+    /**
+     * Separates the inputs combined into one request. Placeholders only stay within their own input if it is
+     * well-formed; see {@link #isBatchable(String)}
+     */
+    private static final String DELIMITER = "\u001E";
+    /**
+     * How long a request may stay in flight before it is abandoned, in milliseconds
+     */
+    private static final long REFRESH_TIMEOUT = 10000;
+    /**
+     * How many consecutive failed or late requests open a server's circuit breaker
+     */
+    private static final int FAILURE_THRESHOLD = 3;
+    /**
+     * How long an open circuit breaker skips requests to its server for, in milliseconds
+     */
+    private static final long OPEN_DURATION = 10000;
+    /**
+     * Minimum time between warnings about failed requests, in milliseconds
+     */
+    private static final long FAILURE_WARNING_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
     private final PlaceholderAPI api;
+    private final Map<Request, CompletableFuture<String>> inFlight;
+    private final Map<UUID, List<Pending>> batches;
+    private final AtomicBoolean flushScheduled;
+    // The last value of each format for each player, kept by unrendered format so it only holds one per format
+    private final Map<UUID, Map<String, String>> lastValues;
+    private final Map<String, CircuitBreaker> breakers;
+    private final AtomicInteger failedRequests = new AtomicInteger();
+    private final AtomicLong lastFailureWarning = new AtomicLong();
 
     public PAPIProxyBridgeHook(@NotNull Velocitab plugin) {
         super(plugin);
         this.api = PlaceholderAPI.createInstance();
         this.api.setCacheExpiry(Math.max(0, plugin.getSettings().getPapiCacheTime()));
+        this.inFlight = new ConcurrentHashMap<>();
+        this.batches = new ConcurrentHashMap<>();
+        this.flushScheduled = new AtomicBoolean();
+        this.lastValues = new ConcurrentHashMap<>();
+        this.breakers = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Format the placeholders in a string for a player.
+     * <p>
+     * Requests for a player are collected for a short window and sent to their server together as one combined
+     * request, and identical requests made while one is already in flight share its result.
+     * <p>
+     * If the request does not complete within the configured deadline, or fails, the last value formatted for
+     * the same format (or the input itself if there is none yet) is returned instead, and the request carries on
+     * in the background to refresh it. Servers which repeatedly fail or exceed the deadline are not sent requests
+     * for a while.
+     *
+     * @param input  the string to format
+     * @param format the unrendered format the input was rendered from, under which its last value is kept
+     * @param player the player to format placeholders for
+     * @return a future completing with the formatted string
+     */
+    public CompletableFuture<String> formatPlaceholders(@NotNull String input, @NotNull String format,
+                                                        @NotNull Player player) {
+        final Request request = new Request(player.getUniqueId(), input);
+        final String fallback = getLastValue(player.getUniqueId(), format).orElse(input);
+        final CircuitBreaker breaker = breakers.computeIfAbsent(player.getCurrentServer()
+                .map(server -> server.getServerInfo().getName())
+                .orElse(""), CircuitBreaker::new);
+        if (!breaker.allowRequest()) {
+            return CompletableFuture.completedFuture(fallback);
+        }
+
+        final CompletableFuture<String> future = inFlight
+                .computeIfAbsent(request, key -> enqueue(key, format, breaker))
+                .copy()
+                .exceptionally(e -> fallback);
+        final long timeout = plugin.getSettings().getPapiRequestTimeout();
+        return timeout > 0 ? future.completeOnTimeout(fallback, timeout, TimeUnit.MILLISECONDS) : future;
+    }
+
+    /**
+     * Forget the last formatted values of a player
+     *
+     * @param uuid the player's UUID
+     */
+    public void invalidate(@NotNull UUID uuid) {
+        lastValues.remove(uuid);
+    }
+
+    @NotNull
+    private Optional<String> getLastValue(@NotNull UUID uuid, @NotNull String format) {
+        return Optional.ofNullable(lastValues.get(uuid)).map(values -> values.get(format));
+    }
+
+    @NotNull
+    private CompletableFuture<String> enqueue(@NotNull Request request, @NotNull String format,
+                                              @NotNull CircuitBreaker breaker) {
+        final CompletableFuture<String> future = new CompletableFuture<>();
+        final long started = System.currentTimeMillis();
+        future.orTimeout(REFRESH_TIMEOUT, TimeUnit.MILLISECONDS).whenComplete((result, e) -> {
+            inFlight.remove(request, future);
+            final long timeout = plugin.getSettings().getPapiRequestTimeout();
+            if (e != null) {
+                warnFailed(e);
+                breaker.recordFailure(e);
+            } else if (timeout > 0 && System.currentTimeMillis() - started > timeout) {
+                breaker.recordFailure(null);
+            } else {
+                breaker.recordSuccess();
+            }
+            if (result != null && plugin.getServer().getPlayer(request.player()).isPresent()) {
+                lastValues.computeIfAbsent(request.player(), uuid -> new ConcurrentHashMap<>())
+                        .put(format, result);
+            }
+        });
+        batches.compute(request.player(), (uuid, pending) -> {
+            final List<Pending> batch = pending != null ? pending : new ArrayList<>();
+            batch.add(new Pending(request.input(), future));
+            return batch;
+        });
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            plugin.getServer().getScheduler()
+                    .buildTask(plugin, this::flush)
+                    .delay(BATCH_WINDOW, TimeUnit.MILLISECONDS)
+                    .schedule();
+        }
+        return future;
+    }
+
+    // Log a failed request with its cause, at most once per interval
+    private void warnFailed(@NotNull Throwable e) {
+        failedRequests.incrementAndGet();
+        final long now = System.currentTimeMillis();
+        final long last = lastFailureWarning.get();
+        if (now - last < FAILURE_WARNING_INTERVAL || !lastFailureWarning.compareAndSet(last, now)) {
+            return;
+        }
+        plugin.log(Level.WARN, String.format("%d PAPIProxyBridge request(s) failed, and were shown with their "
+                + "last known placeholder values instead", failedRequests.getAndSet(0)), e);
+    }
+
+    // Send each player's collected requests which can be combined as one request, and the rest individually
+    private void flush() {
+        flushScheduled.set(false);
+        batches.keySet().forEach(uuid -> {
+            final List<Pending> pending = batches.remove(uuid);
+            if (pending == null || pending.isEmpty()) {
+                return;
+            }
+
+            final List<Pending> batchable = new ArrayList<>();
+            for (Pending request : pending) {
+                if (isBatchable(request.input())) {
+                    batchable.add(request);
+                } else {
+                    send(uuid, request);
+                }
+            }
+            if (batchable.size() == 1) {
+                send(uuid, batchable.get(0));
+                return;
+            }
+            if (batchable.isEmpty()) {
+                return;
+            }
+
+            final String combined = String.join(DELIMITER, batchable.stream().map(Pending::input).toList());
+            api.formatPlaceholders(combined, uuid).whenComplete((result, e) -> {
+                if (e != null) {
+                    batchable.forEach(request -> request.future().completeExceptionally(e));
+                    return;
+                }
+                final String[] results = result.split(Pattern.quote(DELIMITER), -1);
+                if (results.length != batchable.size()) {
+                    // A placeholder value contained the delimiter, so the results cannot be told apart
+                    batchable.forEach(request -> send(uuid, request));
+                    return;
+                }
+                for (int i = 0; i < results.length; i++) {
+                    batchable.get(i).future().complete(results[i]);
+                }
+            });
+        });
+    }
+
+    /**
+     * Returns whether an input can be combined with others into one request without its placeholders changing.
+     * <p>
+     * PAPI pairs up {@code %} characters across the whole combined string, so an input with an unmatched
+     * {@code %} (such as "50%"), or an empty {@code %%} pair which PAPI skips over, would pair with a {@code %}
+     * in the next input and corrupt both. Inputs are only batched if their {@code %} characters form complete,
+     * non-empty pairs, and they do not contain the delimiter.
+     *
+     * @param input the input to check
+     * @return {@code true} if the input can be batched
+     */
+    static boolean isBatchable(@NotNull String input) {
+        if (input.contains(DELIMITER)) {
+            return false;
+        }
+        int open = -1;
+        for (int i = 0; i < input.length(); i++) {
+            if (input.charAt(i) != '%') {
+                continue;
+            }
+            if (open < 0) {
+                open = i;
+                continue;
+            }
+            if (i == open + 1) {
+                return false;
+            }
+            open = -1;
+        }
+        return open < 0;
+    }
+
+    private void send(@NotNull UUID uuid, @NotNull Pending pending) {
+        api.formatPlaceholders(pending.input(), uuid).whenComplete((result, e) -> {
+            if (e != null) {
+                pending.future().completeExceptionally(e);
+            } else {
+                pending.future().complete(result);
+            }
+        });
+    }
+
+    private record Request(@NotNull UUID player, @NotNull String input) {
     }
 
-    public CompletableFuture<String> formatPlaceholders(@NotNull String input, @NotNull Player player) {
-        return api.formatPlaceholders(input, player.getUniqueId());
+    private record Pending(@NotNull String input, @NotNull CompletableFuture<String> future) {
     }
 
+    /**
+     * Tracks consecutive failed or late requests to a server, skipping requests to it for a while once too many
+     * have failed. After that period requests are let through again, and the first result decides whether it stays
+     * closed or opens again.
+     */
+    private final class CircuitBreaker {
+
+        private final String server;
+        private int failures;
+        private long openUntil;
+
+        private CircuitBreaker(@NotNull String server) {
+            this.server = server;
+        }
+
+        private synchronized boolean allowRequest() {
+            return System.currentTimeMillis() >= openUntil;
+        }
+
+        private synchronized void recordSuccess() {
+            failures = 0;
+        }
+
+        private synchronized void recordFailure(@Nullable Throwable cause) {
+            if (++failures < FAILURE_THRESHOLD || !allowRequest()) {
+                return;
+            }
+            failures = 0;
+            openUntil = System.currentTimeMillis() + OPEN_DURATION;
+            final String message = String.format("PAPIProxyBridge requests to %s are failing or too slow, "
+                    + "serving last known placeholder values for %d seconds", server, OPEN_DURATION / 1000);
+            if (cause != null) {
+                plugin.log(Level.WARN, message, cause);
+            } else {
+                plugin.log(Level.WARN, message);
+            }
+        }
+
+    }
 
 }
@@ -0,0 +1,100 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.packet;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import com.velocitypowered.proxy.connection.MinecraftConnection;
+import com.velocitypowered.proxy.connection.client.ConnectedPlayer;
+import com.velocitypowered.proxy.protocol.ProtocolUtils;
+import com.velocitypowered.proxy.protocol.StateRegistry;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An {@link UpdateTeamsPacket} being broadcast to many players, encoded once per protocol version.
+ * <p>
+ * The packet body is encoded once per {@link TeamsPacketAdapter}, and prefixed with the packet ID for each protocol
+ * version it is sent to. Each player is then sent a retained duplicate of the same buffer, rather than the packet
+ * being encoded again by every player's connection. The encoded buffers are released when this is closed.
+ */
+final class EncodedTeamsPacket implements AutoCloseable {
+
+    private final ScoreboardManager manager;
+    private final UpdateTeamsPacket packet;
+    private final Map<TeamsPacketAdapter, ByteBuf> bodies;
+    private final Map<ProtocolVersion, ByteBuf> frames;
+
+    EncodedTeamsPacket(@NotNull ScoreboardManager manager, @NotNull UpdateTeamsPacket packet) {
+        this.manager = manager;
+        this.packet = packet;
+        this.bodies = new HashMap<>();
+        this.frames = new HashMap<>();
+    }
+
+    /**
+     * Write the packet to a player's connection without flushing it, falling back to writing the packet object
+     * if the connection is not in the play state. The caller flushes the connection once it has written all
+     * of the player's packets
+     *
+     * @param player the player to send the packet to
+     */
+    void write(@NotNull ConnectedPlayer player) {
+        final MinecraftConnection connection = player.getConnection();
+        if (connection.getState() != StateRegistry.PLAY) {
+            connection.delayedWrite(packet);
+            return;
+        }
+        connection.delayedWrite(getFrame(player.getProtocolVersion()).retainedDuplicate());
+    }
+
+    @NotNull
+    private ByteBuf getFrame(@NotNull ProtocolVersion version) {
+        return frames.computeIfAbsent(version, protocol -> {
+            final int packetId = StateRegistry.PLAY
+                    .getProtocolRegistry(ProtocolUtils.Direction.CLIENTBOUND, protocol)
+                    .getPacketId(packet);
+            final ByteBuf id = Unpooled.buffer(5);
+            ProtocolUtils.writeVarInt(id, packetId);
+            return Unpooled.wrappedBuffer(id, getBody(protocol).retainedDuplicate());
+        });
+    }
+
+    @NotNull
+    private ByteBuf getBody(@NotNull ProtocolVersion version) {
+        return bodies.computeIfAbsent(manager.getPacketAdapter(version), adapter -> {
+            final ByteBuf body = Unpooled.buffer();
+            adapter.encode(body, packet);
+            return body;
+        });
+    }
+
+    @Override
+    public void close() {
+        frames.values().forEach(ByteBuf::release);
+        bodies.values().forEach(ByteBuf::release);
+        frames.clear();
+        bodies.clear();
+    }
+
+}
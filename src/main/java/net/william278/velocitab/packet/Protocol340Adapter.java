@@ -27,16 +27,15 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 /**
- * Adapter for handling the UpdateTeamsPacket for Minecraft 1.12.2
+ * Adapter for handling the UpdateTeamsPacket for Minecraft 1.9 - 1.12.2
  */
 @SuppressWarnings("DuplicatedCode")
 public class Protocol340Adapter extends TeamsPacketAdapter {
 
     public Protocol340Adapter() {
-        super(Set.of(ProtocolVersion.MINECRAFT_1_12_2));
+        super(ProtocolVersion.MINECRAFT_1_9);
     }
 
     @Override
@@ -27,7 +27,6 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Adapter for handling the UpdateTeamsPacket for Minecraft 1.8.x
@@ -36,7 +35,7 @@ import java.util.Set;
 public class Protocol48Adapter extends TeamsPacketAdapter {
 
     public Protocol48Adapter() {
-        super(Set.of(ProtocolVersion.MINECRAFT_1_8));
+        super(ProtocolVersion.MINECRAFT_1_8);
     }
 
     @Override
@@ -23,6 +23,7 @@ import com.velocitypowered.api.network.ProtocolVersion;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ServerConnection;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.proxy.connection.MinecraftConnection;
 import com.velocitypowered.proxy.connection.client.ConnectedPlayer;
 import com.velocitypowered.proxy.protocol.ProtocolUtils;
 import com.velocitypowered.proxy.protocol.StateRegistry;
@@ -33,48 +34,135 @@ import org.slf4j.event.Level;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static com.velocitypowered.api.network.ProtocolVersion.*;
 
 public class ScoreboardManager {
 
-    private static final String NAMETAG_DELIMITER = ":::";
+    /**
+     * The newest protocol version the team packet adapters and packet mappings have been tested with. Team packets
+     * are not sent to newer clients, as their encoding may have changed
+     */
+    private static final ProtocolVersion LATEST_SUPPORTED_VERSION = MINECRAFT_1_20_2;
+
     private PacketRegistration<UpdateTeamsPacket> packetRegistration;
     private final Velocitab plugin;
-    private final Set<TeamsPacketAdapter> versions;
-    private final Map<UUID, String> createdTeams;
-    private final Map<String, String> nameTags;
+    private final TeamsPacketAdapter[] adapters;
+    private final TeamRegistry teams;
+    private final Map<UUID, ShadowScoreboard> scoreboards;
 
     public ScoreboardManager(@NotNull Velocitab velocitab) {
         this.plugin = velocitab;
-        this.createdTeams = new ConcurrentHashMap<>();
-        this.nameTags = new ConcurrentHashMap<>();
-        this.versions = new HashSet<>();
+        this.teams = new TeamRegistry();
+        this.scoreboards = new ConcurrentHashMap<>();
+        this.adapters = new TeamsPacketAdapter[ProtocolVersion.values().length];
         this.registerVersions();
     }
 
+    // Index the adapter to use for each protocol version, by the newest adapter supporting that version,
+    // up to the newest supported version
     private void registerVersions() {
-        versions.add(new Protocol403Adapter());
-        versions.add(new Protocol340Adapter());
-        versions.add(new Protocol48Adapter());
+        final List<TeamsPacketAdapter> registered = List.of(
+                new Protocol403Adapter(),
+                new Protocol340Adapter(),
+                new Protocol48Adapter()
+        );
+        final StringJoiner unsupported = new StringJoiner(", ");
+        for (ProtocolVersion version : ProtocolVersion.values()) {
+            if (version.isUnknown() || version.isLegacy()) {
+                continue;
+            }
+            if (version.compareTo(LATEST_SUPPORTED_VERSION) > 0) {
+                unsupported.add(version.getVersionIntroducedIn());
+                continue;
+            }
+            registered.stream()
+                    .filter(adapter -> version.compareTo(adapter.getMinimumVersion()) >= 0)
+                    .findFirst()
+                    .ifPresent(adapter -> adapters[version.ordinal()] = adapter);
+        }
+        logAdapterRanges();
+        if (unsupported.length() > 0) {
+            plugin.log(Level.WARN, "Nametags and sorting are disabled for clients newer than "
+                    + LATEST_SUPPORTED_VERSION.getMostRecentSupportedVersion() + " (" + unsupported
+                    + "), as Velocitab does not support their team packets yet. Please check for an update");
+        }
+    }
+
+    // Whether team packets can be encoded for a player's client version
+    private boolean isSupported(@NotNull Player player) {
+        return adapters[player.getProtocolVersion().ordinal()] != null;
+    }
+
+    private void logAdapterRanges() {
+        final StringJoiner ranges = new StringJoiner(", ");
+        ProtocolVersion first = null;
+        ProtocolVersion last = null;
+        for (ProtocolVersion version : ProtocolVersion.values()) {
+            final TeamsPacketAdapter adapter = adapters[version.ordinal()];
+            if (first != null && adapter != adapters[first.ordinal()]) {
+                ranges.add(formatRange(first, last));
+                first = null;
+            }
+            if (adapter != null) {
+                first = first == null ? version : first;
+                last = version;
+            }
+        }
+        if (first != null) {
+            ranges.add(formatRange(first, last));
+        }
+        plugin.log(Level.INFO, "Using team packet adapters: " + ranges);
+    }
+
+    @NotNull
+    private String formatRange(@NotNull ProtocolVersion first, @NotNull ProtocolVersion last) {
+        return first.getVersionIntroducedIn() + "-" + last.getMostRecentSupportedVersion() + " -> "
+                + adapters[first.ordinal()].getClass().getSimpleName();
     }
 
     @NotNull
     public TeamsPacketAdapter getPacketAdapter(@NotNull ProtocolVersion version) {
-        return versions.stream()
-                .filter(adapter -> adapter.getProtocolVersions().contains(version))
-                .findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("No adapter found for protocol version " + version));
+        final TeamsPacketAdapter adapter = adapters[version.ordinal()];
+        if (adapter == null) {
+            throw new IllegalArgumentException("No adapter found for protocol version " + version);
+        }
+        return adapter;
     }
 
     public void close() {
         plugin.getServer().getAllPlayers().forEach(this::resetCache);
+        scoreboards.values().forEach(scoreboard -> dispatchChanges(scoreboard, shadow -> shadow.clear(plugin)));
     }
 
+    /**
+     * Remove a player's team from every viewer, for when the player switches servers or disconnects. The teams
+     * sent to the player are discarded if their client has reset its scoreboard; otherwise they are kept, to be
+     * reconciled with the teams of the player's new group by {@link #resendAllTeams(Player)}.
+     *
+     * @param player the player
+     */
     public void resetCache(@NotNull Player player) {
-        final String team = createdTeams.remove(player.getUniqueId());
-        if (team != null) {
-            dispatchGroupPacket(UpdateTeamsPacket.removeTeam(plugin, team), player);
+        teams.remove(player.getUniqueId());
+        plugin.getTabList().getTabPlayer(player).ifPresent(TabPlayer::clearLastTeam);
+        scoreboards.values().forEach(scoreboard -> {
+            if (scoreboard.getViewer() != player) {
+                dispatchChanges(scoreboard, shadow -> shadow.removeMember(plugin, player.getUsername()));
+            }
+        });
+
+        final ShadowScoreboard scoreboard = player.isActive()
+                ? scoreboards.get(player.getUniqueId())
+                : scoreboards.remove(player.getUniqueId());
+        if (scoreboard == null) {
+            return;
+        }
+
+        // From 1.20.2, switching servers reconfigures the client, which resets its scoreboard
+        if (!player.isActive() || player.getProtocolVersion().compareTo(MINECRAFT_1_20_2) >= 0) {
+            scoreboard.clear(plugin);
         }
     }
 
@@ -91,22 +179,12 @@ public class ScoreboardManager {
         final RegisteredServer serverInfo = optionalServerConnection.get().getServer();
         final List<RegisteredServer> siblings = plugin.getTabList().getGroupServers(serverInfo.getServerInfo().getName());
 
-        final String teamName = createdTeams.get(player.getUniqueId());
-        if (teamName == null) {
+        if (teams.getTeam(player.getUniqueId()).isEmpty()) {
             return;
         }
 
-        final UpdateTeamsPacket packet = UpdateTeamsPacket.removeTeam(plugin, teamName);
-
-        siblings.forEach(server -> server.getPlayersConnected().forEach(connected -> {
-            final boolean canSee = plugin.getVanishManager().canSee(connected.getUsername(), player.getUsername());
-
-            if (canSee) {
-                return;
-            }
-
-            dispatchPacket(packet, connected);
-        }));
+        dispatchGroupChanges(siblings, connected -> !plugin.getVanishManager().canSee(connected.getUsername(), player.getUsername()),
+                shadow -> shadow.removeMember(plugin, player.getUsername()));
     }
 
     public void unVanishPlayer(@NotNull Player player) {
@@ -122,54 +200,32 @@ public class ScoreboardManager {
         final RegisteredServer serverInfo = optionalServerConnection.get().getServer();
         final List<RegisteredServer> siblings = plugin.getTabList().getGroupServers(serverInfo.getServerInfo().getName());
 
-        final String teamName = createdTeams.get(player.getUniqueId());
-        if (teamName == null) {
-            return;
-        }
-
-        final String nametag = nameTags.getOrDefault(teamName, "");
-        if (nametag.isEmpty()) {
-            return;
-        }
-
-        final String[] split = nametag.split(NAMETAG_DELIMITER, 2);
-        final String prefix = split[0];
-        final String suffix = split.length > 1 ? split[1] : "";
-        final UpdateTeamsPacket packet = UpdateTeamsPacket.create(plugin, createdTeams.get(player.getUniqueId()), "", prefix, suffix, player.getUsername());
-
-        siblings.forEach(server -> server.getPlayersConnected().forEach(connected -> dispatchPacket(packet, connected)));
+        teams.getTeam(player.getUniqueId()).ifPresent(team -> dispatchGroupChanges(siblings, connected -> true,
+                shadow -> shadow.setTeam(plugin, player.getUsername(), team)));
     }
 
-    public void updateRole(@NotNull Player player, @NotNull String role) {
+    public void updateRole(@NotNull Player player, @NotNull String role, @NotNull String nametag) {
         if (!player.isActive()) {
             plugin.getTabList().removeOfflinePlayer(player);
             return;
         }
 
         final String name = player.getUsername();
-        final TabPlayer tabPlayer = plugin.getTabList().getTabPlayer(player).orElseThrow();
-
-        tabPlayer.getNametag(plugin).thenAccept(nametag -> {
-            final String[] split = nametag.split(player.getUsername(), 2);
-            final String prefix = split[0];
-            final String suffix = split.length > 1 ? split[1] : "";
+        final String[] split = nametag.split(player.getUsername(), 2);
+        final String prefix = split[0];
+        final String suffix = split.length > 1 ? split[1] : "";
 
-            if (!createdTeams.getOrDefault(player.getUniqueId(), "").equals(role)) {
-                if (createdTeams.containsKey(player.getUniqueId())) {
-                    dispatchGroupPacket(UpdateTeamsPacket.removeTeam(plugin, createdTeams.get(player.getUniqueId())), player);
-                }
+        final TeamRegistry.Team team = TeamRegistry.Team.of(plugin, role, prefix, suffix);
+        if (!teams.assign(player.getUniqueId(), team)) {
+            return;
+        }
 
-                createdTeams.put(player.getUniqueId(), role);
-                this.nameTags.put(role, prefix + NAMETAG_DELIMITER + suffix);
-                dispatchGroupPacket(UpdateTeamsPacket.create(plugin, role, "", prefix, suffix, name), player);
-            } else if (!this.nameTags.getOrDefault(role, "").equals(prefix + NAMETAG_DELIMITER + suffix)) {
-                this.nameTags.put(role, prefix + NAMETAG_DELIMITER + suffix);
-                dispatchGroupPacket(UpdateTeamsPacket.changeNameTag(plugin, role, prefix, suffix), player);
-            }
-        }).exceptionally(e -> {
-            plugin.log(Level.ERROR, "Failed to update role for " + player.getUsername(), e);
-            return null;
-        });
+        player.getCurrentServer().ifPresent(server -> dispatchGroupChanges(
+                plugin.getTabList().getGroupServers(server.getServerInfo().getName()),
+                connected -> plugin.getVanishManager().canSee(connected.getUsername(), name),
+                shadow -> shadow.setTeam(plugin, name, team)
+        ));
+        plugin.getTabList().getStatistics().sent(TabPlayer.Output.TEAM);
     }
 
 
@@ -190,8 +246,15 @@ public class ScoreboardManager {
                 .flatMap(Collection::stream)
                 .toList();
 
-        final List<String> roles = new ArrayList<>();
-
+        // Group the visible players by team, to send each team once with all of its members.
+        // Sort keys make most teams single-member, so the packets for all teams are then flushed together
+        final Map<String, TeamRegistry.Team> visibleTeams = new LinkedHashMap<>();
+        final Map<String, List<String>> members = new HashMap<>();
+        final Set<String> visible = new HashSet<>();
+        if (!siblings.isEmpty()) {
+            // The player's own team is sent again once their role has been recomputed
+            visible.add(player.getUsername());
+        }
         players.forEach(p -> {
             if (p == player || !p.isActive()) {
                 return;
@@ -201,65 +264,96 @@ public class ScoreboardManager {
                 return;
             }
 
-            final String role = createdTeams.getOrDefault(p.getUniqueId(), "");
-            if (role.isEmpty()) {
-                return;
-            }
-
-            // Prevent duplicate packets
-            if (roles.contains(role)) {
-                return;
-            }
+            teams.getTeam(p.getUniqueId()).ifPresent(team -> {
+                visibleTeams.putIfAbsent(team.name(), team);
+                members.computeIfAbsent(team.name(), name -> new ArrayList<>()).add(p.getUsername());
+                visible.add(p.getUsername());
+            });
+        });
 
-            roles.add(role);
+        // Clients which kept their scoreboard across a server switch still have the previous group's teams,
+        // so only the teams which differ are changed, and those of players no longer visible are removed
+        dispatchChanges(getScoreboard(player), shadow -> {
+            final List<UpdateTeamsPacket> packets = new ArrayList<>();
+            visibleTeams.values().forEach(team ->
+                    packets.addAll(shadow.setTeamMembers(plugin, team, members.get(team.name()))));
+            packets.addAll(shadow.retainMembers(plugin, visible));
+            return packets;
+        });
+    }
 
-            final String nametag = nameTags.getOrDefault(role, "");
-            if (nametag.isEmpty()) {
-                return;
-            }
+    /**
+     * Get the number of teams currently registered
+     *
+     * @return the number of teams
+     */
+    public int getTeamCount() {
+        return teams.size();
+    }
 
-            final String[] split = nametag.split(NAMETAG_DELIMITER, 2);
-            final String prefix = split[0];
-            final String suffix = split.length > 1 ? split[1] : "";
-            dispatchPacket(UpdateTeamsPacket.create(plugin, role, "", prefix, suffix, p.getUsername()), player);
-        });
+    @NotNull
+    private ShadowScoreboard getScoreboard(@NotNull Player player) {
+        return scoreboards.computeIfAbsent(player.getUniqueId(), uuid -> new ShadowScoreboard(player));
     }
 
-    private void dispatchPacket(@NotNull UpdateTeamsPacket packet, @NotNull Player player) {
+    // Apply a change to a player's shadow scoreboard, sending the resulting packets while holding its lock.
+    // The packets, which are usually for many single-member teams, are flushed to the player together
+    private void dispatchChanges(@NotNull ShadowScoreboard scoreboard,
+                                 @NotNull Function<ShadowScoreboard, List<UpdateTeamsPacket>> change) {
+        final Player player = scoreboard.getViewer();
         if (!player.isActive()) {
             plugin.getTabList().removeOfflinePlayer(player);
             return;
         }
-
-        try {
-            final ConnectedPlayer connectedPlayer = (ConnectedPlayer) player;
-            connectedPlayer.getConnection().write(packet);
-        } catch (Throwable e) {
-            plugin.log(Level.ERROR, "Failed to dispatch packet (unsupported client or server version)", e);
+        if (!isSupported(player)) {
+            return;
         }
-    }
 
-    private void dispatchGroupPacket(@NotNull UpdateTeamsPacket packet, @NotNull Player player) {
-        final Optional<ServerConnection> optionalServerConnection = player.getCurrentServer();
-        if (optionalServerConnection.isEmpty()) {
-            return;
+        final MinecraftConnection connection = ((ConnectedPlayer) player).getConnection();
+        synchronized (scoreboard) {
+            final List<UpdateTeamsPacket> packets = change.apply(scoreboard);
+            packets.forEach(packet -> {
+                try {
+                    connection.delayedWrite(packet);
+                } catch (Throwable e) {
+                    plugin.log(Level.ERROR, "Failed to dispatch packet (unsupported client or server version)", e);
+                }
+            });
+            if (!packets.isEmpty()) {
+                connection.flush();
+            }
         }
+    }
 
-        final RegisteredServer serverInfo = optionalServerConnection.get().getServer();
-        final List<RegisteredServer> siblings = plugin.getTabList().getGroupServers(serverInfo.getServerInfo().getName());
-        siblings.forEach(server -> server.getPlayersConnected().forEach(connected -> {
-            try {
-                final boolean canSee = plugin.getVanishManager().canSee(player.getUsername(), player.getUsername());
-                if (!canSee) {
+    // Apply a change to the shadow scoreboards of players in a group, encoding each distinct packet once
+    private void dispatchGroupChanges(@NotNull List<RegisteredServer> siblings, @NotNull Predicate<Player> filter,
+                                      @NotNull Function<ShadowScoreboard, List<UpdateTeamsPacket>> change) {
+        final Map<UpdateTeamsPacket, EncodedTeamsPacket> encoded = new HashMap<>();
+        try {
+            siblings.forEach(server -> server.getPlayersConnected().forEach(connected -> {
+                if (!connected.isActive() || !isSupported(connected) || !filter.test(connected)) {
                     return;
                 }
 
-                final ConnectedPlayer connectedPlayer = (ConnectedPlayer) connected;
-                connectedPlayer.getConnection().write(packet);
-            } catch (Throwable e) {
-                plugin.log(Level.ERROR, "Failed to dispatch packet (unsupported client or server version)", e);
-            }
-        }));
+                final ShadowScoreboard scoreboard = getScoreboard(connected);
+                synchronized (scoreboard) {
+                    final List<UpdateTeamsPacket> packets = change.apply(scoreboard);
+                    packets.forEach(packet -> {
+                        try {
+                            encoded.computeIfAbsent(packet, p -> new EncodedTeamsPacket(this, p))
+                                    .write((ConnectedPlayer) connected);
+                        } catch (Throwable e) {
+                            plugin.log(Level.ERROR, "Failed to dispatch packet (unsupported client or server version)", e);
+                        }
+                    });
+                    if (!packets.isEmpty()) {
+                        ((ConnectedPlayer) connected).getConnection().flush();
+                    }
+                }
+            }));
+        } finally {
+            encoded.values().forEach(EncodedTeamsPacket::close);
+        }
     }
 
     public void registerPacket() {
@@ -269,7 +363,9 @@ public class ScoreboardManager {
                     .packetSupplier(() -> new UpdateTeamsPacket(plugin))
                     .stateRegistry(StateRegistry.PLAY)
                     .mapping(0x3E, MINECRAFT_1_8, true)
-                    .mapping(0x44, MINECRAFT_1_12_2, true)
+                    .mapping(0x41, MINECRAFT_1_9, true)
+                    .mapping(0x43, MINECRAFT_1_12, true)
+                    .mapping(0x44, MINECRAFT_1_12_1, true)
                     .mapping(0x47, MINECRAFT_1_13, true)
                     .mapping(0x4B, MINECRAFT_1_14, true)
                     .mapping(0x4C, MINECRAFT_1_15, true)
@@ -297,28 +393,20 @@ public class ScoreboardManager {
 
     public void recalculateVanishForPlayer(TabPlayer tabPlayer, TabPlayer target, boolean canSee) {
         final Player player = tabPlayer.getPlayer();
+        final String targetName = target.getPlayer().getUsername();
 
-        final String team = createdTeams.get(target.getPlayer().getUniqueId());
+        final Optional<TeamRegistry.Team> team = teams.getTeam(target.getPlayer().getUniqueId());
 
-        if (team == null) {
+        if (team.isEmpty()) {
             return;
         }
 
-        final UpdateTeamsPacket removeTeam = UpdateTeamsPacket.removeTeam(plugin, team);
-        dispatchPacket(removeTeam, player);
-
-        if (canSee) {
-            final String nametag = nameTags.getOrDefault(team, "");
-            if (nametag.isEmpty()) {
-                return;
-            }
-
-            final String[] split = nametag.split(NAMETAG_DELIMITER, 2);
-            final String prefix = split[0];
-            final String suffix = split.length > 1 ? split[1] : "";
-            final UpdateTeamsPacket addTeam = UpdateTeamsPacket.create(plugin, team, "", prefix, suffix, target.getPlayer().getUsername());
-            dispatchPacket(addTeam, player);
+        if (!canSee) {
+            dispatchChanges(getScoreboard(player), shadow -> shadow.removeMember(plugin, targetName));
+            return;
         }
+
+        dispatchChanges(getScoreboard(player), shadow -> shadow.setTeam(plugin, targetName, team.get()));
     }
 
 
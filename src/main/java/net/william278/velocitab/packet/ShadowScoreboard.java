@@ -0,0 +1,218 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.packet;
+
+import com.velocitypowered.api.proxy.Player;
+import net.william278.velocitab.Velocitab;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A shadow of the teams and team members Velocitab has sent to a player's client.
+ * <p>
+ * Changes to teams are translated into the minimal sequence of team packets needed to bring the client's
+ * scoreboard in line with the change, rather than removing and recreating teams. Callers should synchronize on
+ * the shadow while computing and sending packets, so packets reach the client in the order the shadow was changed.
+ */
+final class ShadowScoreboard {
+
+    private final Player viewer;
+    private final Map<String, ClientTeam> teams;
+    private final Map<String, String> memberTeams;
+
+    ShadowScoreboard(@NotNull Player viewer) {
+        this.viewer = viewer;
+        this.teams = new HashMap<>();
+        this.memberTeams = new HashMap<>();
+    }
+
+    @NotNull
+    Player getViewer() {
+        return viewer;
+    }
+
+    /**
+     * Place a member in a team on the viewer's client, creating or updating the team as needed.
+     * <p>
+     * Adding a member to a team moves them out of their previous team on the client, so the previous team is
+     * only removed if it is left empty; no packet is needed to remove the member from it.
+     *
+     * @param plugin the plugin instance
+     * @param member the username of the member
+     * @param team   the team
+     * @return the packets to send to the viewer, in order
+     */
+    @NotNull
+    synchronized List<UpdateTeamsPacket> setTeam(@NotNull Velocitab plugin, @NotNull String member,
+                                                 @NotNull TeamRegistry.Team team) {
+        return setTeamMembers(plugin, team, List.of(member));
+    }
+
+    /**
+     * Place several members in a team on the viewer's client, creating or updating the team as needed.
+     * A new team is created with all of its members in one packet, unless the member list has to be split
+     * to fit within the packet size limit.
+     *
+     * @param plugin  the plugin instance
+     * @param team    the team
+     * @param members the usernames of the members
+     * @return the packets to send to the viewer, in order
+     */
+    @NotNull
+    synchronized List<UpdateTeamsPacket> setTeamMembers(@NotNull Velocitab plugin, @NotNull TeamRegistry.Team team,
+                                                        @NotNull Collection<String> members) {
+        final List<UpdateTeamsPacket> packets = new ArrayList<>(2);
+        ClientTeam existing = teams.get(team.name());
+        final boolean created = existing == null;
+        if (created) {
+            existing = new ClientTeam(team, new HashSet<>());
+            teams.put(team.name(), existing);
+        } else if (!existing.team.equals(team)) {
+            existing.team = team;
+            packets.add(UpdateTeamsPacket.changeNameTag(plugin, team));
+        }
+
+        final List<String> added = new ArrayList<>(members.size());
+        for (String member : members) {
+            if (existing.members.add(member)) {
+                added.add(member);
+            }
+        }
+
+        final List<List<String>> batches = created || !added.isEmpty()
+                ? UpdateTeamsPacket.partitionMembers(added)
+                : List.of();
+        for (int i = 0; i < batches.size(); i++) {
+            final String[] batch = batches.get(i).toArray(String[]::new);
+            packets.add(created && i == 0
+                    ? UpdateTeamsPacket.create(plugin, team, batch)
+                    : UpdateTeamsPacket.addToTeam(plugin, team.name(), batch));
+        }
+
+        for (String member : added) {
+            final String previous = memberTeams.put(member, team.name());
+            if (previous == null || previous.equals(team.name())) {
+                continue;
+            }
+            final ClientTeam previousTeam = teams.get(previous);
+            if (previousTeam != null && previousTeam.members.remove(member) && previousTeam.members.isEmpty()) {
+                teams.remove(previous);
+                packets.add(UpdateTeamsPacket.removeTeam(plugin, previous));
+            }
+        }
+        return packets;
+    }
+
+    /**
+     * Remove a member from their team on the viewer's client, removing the team if it is left empty
+     *
+     * @param plugin the plugin instance
+     * @param member the username of the member
+     * @return the packets to send to the viewer
+     */
+    @NotNull
+    synchronized List<UpdateTeamsPacket> removeMember(@NotNull Velocitab plugin, @NotNull String member) {
+        final String team = memberTeams.remove(member);
+        if (team == null) {
+            return List.of();
+        }
+
+        final ClientTeam existing = teams.get(team);
+        if (existing == null || !existing.members.remove(member)) {
+            return List.of();
+        }
+        if (existing.members.isEmpty()) {
+            teams.remove(team);
+            return List.of(UpdateTeamsPacket.removeTeam(plugin, team));
+        }
+        return List.of(UpdateTeamsPacket.removeFromTeam(plugin, team, member));
+    }
+
+    /**
+     * Remove every member not in the given set from their team on the viewer's client, removing teams which are
+     * left empty. Members of the same team are removed in one packet.
+     *
+     * @param plugin  the plugin instance
+     * @param members the usernames of the members to keep
+     * @return the packets to send to the viewer
+     */
+    @NotNull
+    synchronized List<UpdateTeamsPacket> retainMembers(@NotNull Velocitab plugin, @NotNull Set<String> members) {
+        final List<UpdateTeamsPacket> packets = new ArrayList<>();
+        final Iterator<Map.Entry<String, ClientTeam>> iterator = teams.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<String, ClientTeam> entry = iterator.next();
+            final List<String> removed = new ArrayList<>();
+            entry.getValue().members.removeIf(member -> !members.contains(member) && removed.add(member));
+            if (removed.isEmpty()) {
+                continue;
+            }
+
+            removed.forEach(memberTeams::remove);
+            if (entry.getValue().members.isEmpty()) {
+                iterator.remove();
+                packets.add(UpdateTeamsPacket.removeTeam(plugin, entry.getKey()));
+            } else {
+                packets.add(UpdateTeamsPacket.removeFromTeam(plugin, entry.getKey(), removed.toArray(String[]::new)));
+            }
+        }
+        return packets;
+    }
+
+    /**
+     * Get the team a member is in on the viewer's client
+     *
+     * @param member the username of the member
+     * @return the team name, or {@code null} if the member is not in a team
+     */
+    @Nullable
+    synchronized String getTeam(@NotNull String member) {
+        return memberTeams.get(member);
+    }
+
+    /**
+     * Forget all teams, returning the packets which remove them from the viewer's client
+     *
+     * @param plugin the plugin instance
+     * @return the packets removing every team
+     */
+    @NotNull
+    synchronized List<UpdateTeamsPacket> clear(@NotNull Velocitab plugin) {
+        final List<UpdateTeamsPacket> packets = teams.keySet().stream()
+                .map(team -> UpdateTeamsPacket.removeTeam(plugin, team))
+                .toList();
+        teams.clear();
+        memberTeams.clear();
+        return packets;
+    }
+
+    private static final class ClientTeam {
+        private TeamRegistry.Team team;
+        private final Set<String> members;
+
+        private ClientTeam(@NotNull TeamRegistry.Team team, @NotNull Set<String> members) {
+            this.team = team;
+            this.members = members;
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.packet;
+
+import net.william278.velocitab.Velocitab;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Registry of the teams Velocitab has created and the players in each, reference counted by member so that
+ * a team is freed as soon as its last member leaves it
+ */
+final class TeamRegistry {
+
+    private final Map<String, Registered> teams;
+    private final Map<UUID, String> memberTeams;
+
+    TeamRegistry() {
+        this.teams = new HashMap<>();
+        this.memberTeams = new HashMap<>();
+    }
+
+    /**
+     * Place a player in a team, registering or updating the team
+     *
+     * @param member the UUID of the player
+     * @param team   the team to place the player in
+     * @return {@code true} if the player's team, or the properties of the team, changed
+     */
+    synchronized boolean assign(@NotNull UUID member, @NotNull Team team) {
+        boolean changed = false;
+        final Registered existing = teams.get(team.name());
+        if (existing == null) {
+            teams.put(team.name(), new Registered(team, new HashSet<>(Set.of(member))));
+            changed = true;
+        } else {
+            if (!existing.team.equals(team)) {
+                existing.team = team;
+                changed = true;
+            }
+            changed |= existing.members.add(member);
+        }
+
+        final String previous = memberTeams.put(member, team.name());
+        if (previous != null && !previous.equals(team.name())) {
+            release(previous, member);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * Remove a player from their team, freeing the team if they were its last member
+     *
+     * @param member the UUID of the player
+     */
+    synchronized void remove(@NotNull UUID member) {
+        final String team = memberTeams.remove(member);
+        if (team != null) {
+            release(team, member);
+        }
+    }
+
+    /**
+     * Get the team a player is in
+     *
+     * @param member the UUID of the player
+     * @return the team, if the player is in one
+     */
+    @NotNull
+    synchronized Optional<Team> getTeam(@NotNull UUID member) {
+        return Optional.ofNullable(memberTeams.get(member))
+                .map(teams::get)
+                .map(registered -> registered.team);
+    }
+
+    /**
+     * Get the number of registered teams
+     *
+     * @return the number of teams
+     */
+    synchronized int size() {
+        return teams.size();
+    }
+
+    private void release(@NotNull String team, @NotNull UUID member) {
+        final Registered registered = teams.get(team);
+        if (registered != null && registered.members.remove(member) && registered.members.isEmpty()) {
+            teams.remove(team);
+        }
+    }
+
+    /**
+     * The properties of a team, as sent to clients
+     *
+     * @param name       the team name
+     * @param prefix     the prefix shown before member names
+     * @param suffix     the suffix shown after member names
+     * @param color      the team color ID, taken from the last color code in the prefix
+     * @param visibility the visibility of member nametags
+     */
+    record Team(@NotNull String name, @NotNull String prefix, @NotNull String suffix, int color,
+                @NotNull UpdateTeamsPacket.NameTagVisibility visibility) {
+
+        @NotNull
+        static Team of(@NotNull Velocitab plugin, @NotNull String name, @NotNull String prefix,
+                       @NotNull String suffix) {
+            return new Team(name, prefix, suffix, UpdateTeamsPacket.getLastColor(prefix),
+                    UpdateTeamsPacket.isNametagPresent(prefix, suffix, plugin)
+                            ? UpdateTeamsPacket.NameTagVisibility.ALWAYS
+                            : UpdateTeamsPacket.NameTagVisibility.NEVER);
+        }
+
+    }
+
+    private static final class Registered {
+        private Team team;
+        private final Set<UUID> members;
+
+        private Registered(@NotNull Team team, @NotNull Set<UUID> members) {
+            this.team = team;
+            this.members = members;
+        }
+    }
+
+}
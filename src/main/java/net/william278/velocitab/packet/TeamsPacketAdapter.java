@@ -27,13 +27,15 @@ import lombok.RequiredArgsConstructor;
 import org.apache.commons.text.StringEscapeUtils;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Set;
-
 @Getter
 @RequiredArgsConstructor
 public abstract class TeamsPacketAdapter {
 
-    private final Set<ProtocolVersion> protocolVersions;
+    /**
+     * The oldest protocol version this adapter encodes packets for; it is used for all newer versions
+     * up to the minimum version of the next adapter
+     */
+    private final ProtocolVersion minimumVersion;
 
     public abstract void encode(@NotNull ByteBuf byteBuf, @NotNull UpdateTeamsPacket packet);
 
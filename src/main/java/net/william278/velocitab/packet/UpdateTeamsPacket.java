@@ -30,6 +30,7 @@ import net.william278.velocitab.Velocitab;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
@@ -43,6 +44,11 @@ import java.util.stream.Collectors;
 @Accessors(fluent = true)
 public class UpdateTeamsPacket implements MinecraftPacket {
 
+    /**
+     * Maximum encoded size of the members in one packet, well under the client's packet size limit
+     */
+    private static final int MAX_MEMBERS_SIZE = 1 << 20;
+
     private final Velocitab plugin;
 
     private String teamName;
@@ -60,42 +66,40 @@ public class UpdateTeamsPacket implements MinecraftPacket {
         this.plugin = plugin;
     }
 
+    static boolean isNametagPresent(@Nullable String prefix, @Nullable String suffix, @NotNull Velocitab plugin) {
+        if (!plugin.getSettings().isRemoveNametags()) return true;
+
+        return prefix != null && !prefix.isEmpty() || suffix != null && !suffix.isEmpty();
+    }
+
     @NotNull
-    protected static UpdateTeamsPacket create(@NotNull Velocitab plugin, @NotNull String teamName,
-                                              @NotNull String displayName, @Nullable String prefix,
-                                              @Nullable String suffix, @NotNull String... teamMembers) {
+    protected static UpdateTeamsPacket create(@NotNull Velocitab plugin, @NotNull TeamRegistry.Team team,
+                                              @NotNull String... teamMembers) {
         return new UpdateTeamsPacket(plugin)
-                .teamName(teamName.length() > 16 ? teamName.substring(0, 16) : teamName)
+                .teamName(team.name().length() > 16 ? team.name().substring(0, 16) : team.name())
                 .mode(UpdateMode.CREATE_TEAM)
-                .displayName(displayName)
+                .displayName("")
                 .friendlyFlags(List.of(FriendlyFlag.CAN_HURT_FRIENDLY))
-                .nameTagVisibility(isNametagPresent(prefix, suffix, plugin) ? NameTagVisibility.ALWAYS : NameTagVisibility.NEVER)
+                .nameTagVisibility(team.visibility())
                 .collisionRule(CollisionRule.ALWAYS)
-                .color(getLastColor(prefix))
-                .prefix(prefix == null ? "" : prefix)
-                .suffix(suffix == null ? "" : suffix)
+                .color(team.color())
+                .prefix(team.prefix())
+                .suffix(team.suffix())
                 .entities(Arrays.asList(teamMembers));
     }
 
-    private static boolean isNametagPresent(@Nullable String prefix, @Nullable String suffix, @NotNull Velocitab plugin) {
-        if (!plugin.getSettings().isRemoveNametags()) return true;
-
-        return prefix != null && !prefix.isEmpty() || suffix != null && !suffix.isEmpty();
-    }
-
     @NotNull
-    protected static UpdateTeamsPacket changeNameTag(@NotNull Velocitab plugin, @NotNull String teamName,
-                                                     @Nullable String prefix, @Nullable String suffix) {
+    protected static UpdateTeamsPacket changeNameTag(@NotNull Velocitab plugin, @NotNull TeamRegistry.Team team) {
         return new UpdateTeamsPacket(plugin)
-                .teamName(teamName.length() > 16 ? teamName.substring(0, 16) : teamName)
+                .teamName(team.name().length() > 16 ? team.name().substring(0, 16) : team.name())
                 .mode(UpdateMode.UPDATE_INFO)
-                .displayName(teamName)
+                .displayName(team.name())
                 .friendlyFlags(List.of(FriendlyFlag.CAN_HURT_FRIENDLY))
-                .nameTagVisibility(isNametagPresent(prefix, suffix, plugin) ? NameTagVisibility.ALWAYS : NameTagVisibility.NEVER)
+                .nameTagVisibility(team.visibility())
                 .collisionRule(CollisionRule.ALWAYS)
-                .color(getLastColor(prefix))
-                .prefix(prefix == null ? "" : prefix)
-                .suffix(suffix == null ? "" : suffix);
+                .color(team.color())
+                .prefix(team.prefix())
+                .suffix(team.suffix());
     }
 
     @NotNull
@@ -123,6 +127,31 @@ public class UpdateTeamsPacket implements MinecraftPacket {
                 .mode(UpdateMode.REMOVE_TEAM);
     }
 
+    /**
+     * Split a list of team members into batches which each fit within a single team packet
+     *
+     * @param members the usernames of the members
+     * @return the batches of members, or a single empty batch if there are no members
+     */
+    @NotNull
+    protected static List<List<String>> partitionMembers(@NotNull List<String> members) {
+        final List<List<String>> batches = new ArrayList<>();
+        int start = 0;
+        int size = 0;
+        for (int i = 0; i < members.size(); i++) {
+            // Strings are written as a VarInt length followed by up to 3 bytes per UTF-8 character
+            final int memberSize = 3 + members.get(i).length() * 3;
+            if (size + memberSize > MAX_MEMBERS_SIZE && i > start) {
+                batches.add(members.subList(start, i));
+                start = i;
+                size = 0;
+            }
+            size += memberSize;
+        }
+        batches.add(members.subList(start, members.size()));
+        return batches;
+    }
+
     public static int getLastColor(@Nullable String text) {
         if (text == null) {
             return 15;
@@ -23,11 +23,16 @@ import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.WeakHashMap;
 
 public class Role implements Comparable<Role> {
     public static final int DEFAULT_WEIGHT = 0;
     public static final Role DEFAULT_ROLE = new Role(DEFAULT_WEIGHT, null, null, null, null);
+    private static final Map<Role, WeakReference<Role>> interned = new WeakHashMap<>();
     @Getter
     private final int weight;
     @Nullable
@@ -73,6 +78,41 @@ public class Role implements Comparable<Role> {
         return Integer.toString(weight);
     }
 
+    /**
+     * Get the shared instance of a role, so that players with identical roles share one instance.
+     * Roles which are no longer used by any player are discarded.
+     *
+     * @param role the role
+     * @return the shared role equal to the given role
+     */
+    @NotNull
+    public static Role intern(@NotNull Role role) {
+        synchronized (interned) {
+            final WeakReference<Role> existing = interned.get(role);
+            final Role shared = existing != null ? existing.get() : null;
+            if (shared != null) {
+                return shared;
+            }
+            interned.put(role, new WeakReference<>(role));
+            return role;
+        }
+    }
 
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        return obj instanceof Role other && weight == other.weight
+                && Objects.equals(name, other.name)
+                && Objects.equals(displayName, other.displayName)
+                && Objects.equals(prefix, other.prefix)
+                && Objects.equals(suffix, other.suffix);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(weight, name, displayName, prefix, suffix);
+    }
 
 }
@@ -21,34 +21,45 @@ package net.william278.velocitab.player;
 
 import com.velocitypowered.api.proxy.Player;
 import lombok.Getter;
-import lombok.Setter;
 import net.kyori.adventure.text.Component;
 import net.william278.velocitab.Velocitab;
 import net.william278.velocitab.config.Placeholder;
 import net.william278.velocitab.tab.PlayerTabList;
+import net.william278.velocitab.tab.ShadowTabList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public final class TabPlayer implements Comparable<TabPlayer> {
     private final Player player;
-    @Setter
+    private final ShadowTabList shadowTabList;
     private Role role;
     @Getter
-    private int headerIndex = 0;
+    private Component lastDisplayname;
+    @Nullable
+    private volatile String lastDisplayNameFormat;
+    @Nullable
     @Getter
-    private int footerIndex = 0;
+    private volatile String lastHeader;
+    @Nullable
     @Getter
-    private Component lastDisplayname;
+    private volatile String lastFooter;
     private String teamName;
     @Nullable
+    private String lastNametag;
+    @Nullable
+    private volatile String serverName;
+    @Nullable
     private String customName;
+    private final AtomicInteger dirtyOutputs = new AtomicInteger(Output.ALL);
 
     public TabPlayer(@NotNull Player player, @NotNull Role role) {
         this.player = player;
         this.role = role;
+        this.shadowTabList = new ShadowTabList(player);
     }
 
     @NotNull
@@ -56,11 +67,33 @@ public final class TabPlayer implements Comparable<TabPlayer> {
         return player;
     }
 
+    /**
+     * Get the shadow of this player's TAB list, tracking the entries Velocitab has sent to them
+     *
+     * @return the player's shadow TAB list
+     */
+    @NotNull
+    public ShadowTabList getShadowTabList() {
+        return shadowTabList;
+    }
+
     @NotNull
     public Role getRole() {
         return role;
     }
 
+    /**
+     * Set the role of this player, marking all of their outputs as dirty if it changed
+     *
+     * @param role The new role
+     */
+    public void setRole(@NotNull Role role) {
+        if (!role.equals(this.role)) {
+            markDirty();
+        }
+        this.role = role;
+    }
+
     @NotNull
     public String getRoleWeightString() {
         return getRole().getWeightString();
@@ -74,6 +107,24 @@ public final class TabPlayer implements Comparable<TabPlayer> {
      */
     @NotNull
     public String getServerName() {
+        final String cached = serverName;
+        return cached != null ? cached : getCurrentServerName();
+    }
+
+    /**
+     * Update the cached name of the server the player is on, for when they have switched servers
+     *
+     * @return the name of the server the player is now on
+     */
+    @NotNull
+    public String updateServerName() {
+        final String current = getCurrentServerName();
+        this.serverName = current;
+        return current;
+    }
+
+    @NotNull
+    private String getCurrentServerName() {
         return player.getCurrentServer()
                 .map(serverConnection -> serverConnection.getServerInfo().getName())
                 .orElse("unknown");
@@ -87,7 +138,7 @@ public final class TabPlayer implements Comparable<TabPlayer> {
      */
     @NotNull
     public String getServerGroup(@NotNull Velocitab plugin) {
-        return plugin.getSettings().getServerGroup(this.getServerName());
+        return plugin.getServerGroupIndex().getGroupName(this.getServerName());
     }
 
     /**
@@ -97,7 +148,7 @@ public final class TabPlayer implements Comparable<TabPlayer> {
      * @return The ordinal position of the server group
      */
     public int getServerGroupPosition(@NotNull Velocitab plugin) {
-        return plugin.getSettings().getServerGroupPosition(getServerGroup(plugin));
+        return plugin.getServerGroupIndex().getOrdinal(getServerGroup(plugin));
     }
 
     /**
@@ -109,53 +160,123 @@ public final class TabPlayer implements Comparable<TabPlayer> {
      */
     @NotNull
     public String getServerDisplayName(@NotNull Velocitab plugin) {
-        return plugin.getSettings().getServerDisplayName(getServerName());
+        return plugin.getRuntimeConfig().getServerDisplayName(getServerName());
     }
 
     @NotNull
     public CompletableFuture<Component> getDisplayName(@NotNull Velocitab plugin) {
-        final String serverGroup = plugin.getSettings().getServerGroup(getServerName());
-        return Placeholder.replace(plugin.getSettings().getFormat(serverGroup), plugin, this)
-                .thenApply(formatted -> plugin.getFormatter().format(formatted, this, plugin))
-                .thenApply(c -> this.lastDisplayname = c);
+        final String serverGroup = getServerGroup(plugin);
+        return Placeholder.replace(plugin.getRuntimeConfig().getFormat(serverGroup), plugin, this)
+                .thenApply(formatted -> {
+                    // Skip parsing the display name again if the format resolved to the same text
+                    final Component last = this.lastDisplayname;
+                    if (last != null && formatted.equals(lastDisplayNameFormat)
+                            && !plugin.getFormatter().isPlayerDependent(plugin)) {
+                        return last;
+                    }
+                    this.lastDisplayname = plugin.getFormatter().format(formatted, this, plugin);
+                    this.lastDisplayNameFormat = formatted;
+                    return this.lastDisplayname;
+                });
     }
 
     @NotNull
     public CompletableFuture<String> getNametag(@NotNull Velocitab plugin) {
-        final String serverGroup = plugin.getSettings().getServerGroup(getServerName());
-        return Placeholder.replace(plugin.getSettings().getNametag(serverGroup), plugin, this)
+        final String serverGroup = getServerGroup(plugin);
+        return Placeholder.replace(plugin.getRuntimeConfig().getNametag(serverGroup), plugin, this)
                 .thenApply(formatted -> plugin.getFormatter().formatLegacySymbols(formatted, this, plugin));
 
     }
 
     @NotNull
     public CompletableFuture<String> getTeamName(@NotNull Velocitab plugin) {
-        return plugin.getSortingManager().getTeamName(this)
-                .thenApply(teamName -> this.teamName = teamName);
+        return plugin.getSortingManager().getTeamName(this);
     }
 
     public Optional<String> getLastTeamName() {
         return Optional.ofNullable(teamName);
     }
 
+    /**
+     * Get the nametag last sent for this player
+     *
+     * @return the formatted nametag, if one has been sent since the player's team was last reset
+     */
+    public synchronized Optional<String> getLastNametag() {
+        return Optional.ofNullable(lastNametag);
+    }
+
+    /**
+     * Record the team name and nametag sent for this player
+     *
+     * @param teamName the team name, which is the player's sort key
+     * @param nametag  the formatted nametag
+     * @return {@code true} if either differs from what was last sent
+     */
+    public synchronized boolean setLastTeam(@NotNull String teamName, @NotNull String nametag) {
+        if (teamName.equals(this.teamName) && nametag.equals(lastNametag)) {
+            return false;
+        }
+        this.teamName = teamName;
+        this.lastNametag = nametag;
+        return true;
+    }
+
+    /**
+     * Forget the nametag last sent for this player, so that their team is sent again on the next update
+     */
+    public synchronized void clearLastTeam() {
+        this.lastNametag = null;
+    }
+
 
     public void sendHeaderAndFooter(@NotNull PlayerTabList tabList) {
-        tabList.getHeader(this).thenAccept(header -> tabList.getFooter(this)
-                .thenAccept(footer -> player.sendPlayerListHeaderAndFooter(header, footer)));
+        markDirty(Output.HEADER_FOOTER);
+        tabList.updateHeaderAndFooter(this);
     }
 
-    public void incrementHeaderIndex(@NotNull Velocitab plugin) {
-        headerIndex++;
-        if (headerIndex >= plugin.getSettings().getHeaderListSize(getServerGroup(plugin))) {
-            headerIndex = 0;
-        }
+    /**
+     * Record the resolved header and footer about to be sent to this player
+     *
+     * @param header The resolved header format
+     * @param footer The resolved footer format
+     * @return {@code true} if either differs from the header and footer last sent
+     */
+    public boolean setLastHeaderAndFooter(@NotNull String header, @NotNull String footer) {
+        final boolean changed = !header.equals(lastHeader) || !footer.equals(lastFooter);
+        this.lastHeader = header;
+        this.lastFooter = footer;
+        return changed;
     }
 
-    public void incrementFooterIndex(@NotNull Velocitab plugin) {
-        footerIndex++;
-        if (footerIndex >= plugin.getSettings().getFooterListSize(getServerGroup(plugin))) {
-            footerIndex = 0;
-        }
+    /**
+     * Mark all outputs of this player as dirty, forcing them to be recomputed and resent on the next update
+     */
+    public void markDirty() {
+        dirtyOutputs.set(Output.ALL);
+    }
+
+    /**
+     * Mark an output of this player as dirty, forcing it to be recomputed and resent on the next update
+     *
+     * @param output The output to mark as dirty
+     */
+    public void markDirty(@NotNull Output output) {
+        dirtyOutputs.getAndUpdate(dirty -> dirty | output.mask());
+    }
+
+    /**
+     * Clear the dirty flag of an output of this player
+     *
+     * @param output The output to clear
+     * @return {@code true} if the output was dirty
+     */
+    public boolean clearDirty(@NotNull Output output) {
+        return (dirtyOutputs.getAndUpdate(dirty -> dirty & ~output.mask()) & output.mask()) != 0;
+    }
+
+    public boolean isDirty(@NotNull Output output) {
+        return (dirtyOutputs.get() & output.mask()) != 0;
     }
 
     /**
@@ -174,6 +295,7 @@ public final class TabPlayer implements Comparable<TabPlayer> {
      */
     public void setCustomName(@Nullable String customName) {
         this.customName = customName;
+        markDirty();
     }
 
     @Override
@@ -190,4 +312,24 @@ public final class TabPlayer implements Comparable<TabPlayer> {
         return obj instanceof TabPlayer other && player.getUniqueId().equals(other.player.getUniqueId());
     }
 
+    @Override
+    public int hashCode() {
+        return player.getUniqueId().hashCode();
+    }
+
+    /**
+     * The outputs a player has in the TAB list, which are recomputed when dirty
+     */
+    public enum Output {
+        TEAM,
+        DISPLAY_NAME,
+        HEADER_FOOTER;
+
+        private static final int ALL = (1 << values().length) - 1;
+
+        private int mask() {
+            return 1 << ordinal();
+        }
+    }
+
 }
@@ -0,0 +1,125 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.sorting;
+
+import net.william278.velocitab.Velocitab;
+import net.william278.velocitab.config.Placeholder;
+import net.william278.velocitab.config.PlaceholderTemplate;
+import net.william278.velocitab.player.TabPlayer;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A sorting element compiled into a function writing its part of a player's sort key
+ */
+interface SortKeyExtractor {
+
+    /**
+     * Append this element's part of the sort key for a player
+     *
+     * @param plugin   the plugin instance
+     * @param player   the player to get the sort key for
+     * @param external the values of the elements resolved through PAPIProxyBridge, in order
+     * @param key      the sort key being built
+     */
+    void write(@NotNull Velocitab plugin, @NotNull TabPlayer player, @NotNull String[] external,
+               @NotNull StringBuilder key);
+
+    /**
+     * Compile a sorting element, picking the most direct way to read its value
+     *
+     * @param element       the sorting element, as written in the config
+     * @param externalIndex the index the element's value will have among the externally resolved values
+     * @return the compiled extractor
+     */
+    @NotNull
+    static SortKeyExtractor compile(@NotNull String element, int externalIndex) {
+        final Placeholder placeholder = Placeholder.byPlaceholder(element);
+        if (placeholder == Placeholder.ROLE_WEIGHT) {
+            return new RoleWeight();
+        }
+        if (placeholder == Placeholder.SERVER_GROUP_INDEX) {
+            return new ServerGroupIndex();
+        }
+        if (placeholder != null) {
+            return new Internal(placeholder);
+        }
+
+        final PlaceholderTemplate template = PlaceholderTemplate.of(element);
+        if (template.hasExternalPlaceholders()) {
+            return new External(externalIndex);
+        }
+        return new Template(template);
+    }
+
+    /**
+     * Returns whether the element must be resolved through PAPIProxyBridge
+     *
+     * @return {@code true} if the element has external placeholders
+     */
+    default boolean isExternal() {
+        return false;
+    }
+
+    record RoleWeight() implements SortKeyExtractor {
+        @Override
+        public void write(@NotNull Velocitab plugin, @NotNull TabPlayer player, @NotNull String[] external,
+                          @NotNull StringBuilder key) {
+            SortingManager.appendNumber(player.getRole().getWeight(), key);
+        }
+    }
+
+    record ServerGroupIndex() implements SortKeyExtractor {
+        @Override
+        public void write(@NotNull Velocitab plugin, @NotNull TabPlayer player, @NotNull String[] external,
+                          @NotNull StringBuilder key) {
+            SortingManager.appendNumber(player.getServerGroupPosition(plugin), key);
+        }
+    }
+
+    record Internal(@NotNull Placeholder placeholder) implements SortKeyExtractor {
+        @Override
+        public void write(@NotNull Velocitab plugin, @NotNull TabPlayer player, @NotNull String[] external,
+                          @NotNull StringBuilder key) {
+            SortingManager.appendValue(placeholder.getValue(plugin, player), key);
+        }
+    }
+
+    record Template(@NotNull PlaceholderTemplate template) implements SortKeyExtractor {
+        @Override
+        public void write(@NotNull Velocitab plugin, @NotNull TabPlayer player, @NotNull String[] external,
+                          @NotNull StringBuilder key) {
+            SortingManager.appendValue(template.render(plugin, player), key);
+        }
+    }
+
+    record External(int index) implements SortKeyExtractor {
+        @Override
+        public void write(@NotNull Velocitab plugin, @NotNull TabPlayer player, @NotNull String[] external,
+                          @NotNull StringBuilder key) {
+            SortingManager.appendValue(index < external.length ? external[index] : "", key);
+        }
+
+        @Override
+        public boolean isExternal() {
+            return true;
+        }
+    }
+
+}
@@ -22,18 +22,64 @@ package net.william278.velocitab.sorting;
 import net.william278.velocitab.Velocitab;
 import net.william278.velocitab.config.Placeholder;
 import net.william278.velocitab.player.TabPlayer;
+import org.jetbrains.annotations.NotNull;
 import org.slf4j.event.Level;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the scoreboard team names players are sorted by.
+ * <p>
+ * Clients sort the TAB list by team name, comparing names character by character, so each sorting element is
+ * encoded such that comparing encoded keys gives the same order as comparing the values themselves:
+ * <ul>
+ *     <li>Numbers, which may be signed and have a decimal part, are written as the top 45 bits of their
+ *     IEEE 754 bit pattern, adjusted to sort as unsigned values and inverted so that higher numbers sort first.
+ *     These are spread over {@value #NUMBER_LENGTH} characters of {@value #CHAR_BITS} bits each, offset to
+ *     U+5000 and up, clear of surrogate characters. Whole numbers up to 2<sup>34</sup> are encoded exactly.</li>
+ *     <li>Text of up to {@value #TEXT_LENGTH} characters is written whole, while longer text is cut to its first
+ *     {@value #TRUNCATED_TEXT_LENGTH}, as the original keys did. Text written shorter than {@value #TEXT_LENGTH}
+ *     characters is followed by a terminator that sorts before any printable character, so that shorter text sorts
+ *     first and later elements line up.
+ *     Characters from U+5000 up are written as U+4FFF to stay below numbers, so text in scripts before that
+ *     point (including Latin, Greek, Cyrillic, Arabic and kana) sorts exactly, while later characters,
+ *     such as most CJK ideographs and Hangul, sort together after it.</li>
+ * </ul>
+ * Numbers sort after text when an element has both. The key is limited to {@value #KEY_LENGTH} characters and
+ * followed by {@value #SUFFIX_LENGTH} characters encoding the player's UUID, making it unique within the
+ * 16 character team name limit of older clients.
+ */
 public class SortingManager {
 
-    private final Velocitab plugin;
     private static final String DELIMITER = ":::";
+    private static final String[] NO_VALUES = new String[0];
+    /**
+     * Length of the sort key before the unique suffix is appended
+     */
+    private static final int KEY_LENGTH = 12;
+    private static final int SUFFIX_LENGTH = 4;
+    private static final int NUMBER_LENGTH = 3;
+    private static final int TEXT_LENGTH = 6;
+    private static final int TRUNCATED_TEXT_LENGTH = 4;
+    private static final int CHAR_BITS = 15;
+    private static final char CHAR_OFFSET = 0x5000;
+    private static final char TEXT_LIMIT = CHAR_OFFSET - 1;
+    private static final char TEXT_TERMINATOR = 0x01;
+    /**
+     * Minimum time between warnings about truncated sort keys, in milliseconds
+     */
+    private static final long TRUNCATION_WARNING_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+    private static final ThreadLocal<StringBuilder> builder = ThreadLocal.withInitial(() -> new StringBuilder(16));
+
+    private final Velocitab plugin;
+    private final AtomicInteger truncatedKeys = new AtomicInteger();
+    private final AtomicLong lastTruncationWarning = new AtomicLong();
+    private volatile CompiledElements compiled;
 
     public SortingManager(Velocitab plugin) {
         this.plugin = plugin;
@@ -44,60 +90,138 @@ public class SortingManager {
             return CompletableFuture.completedFuture("");
         }
 
-        return Placeholder.replace(String.join(DELIMITER, plugin.getSettings().getSortingElements()), plugin, player)
-                .thenApply(s -> Arrays.asList(s.split(DELIMITER)))
-                .thenApply(v -> v.stream().map(this::adaptValue).collect(Collectors.toList()))
-                .thenApply(v -> handleList(player, v));
+        final CompiledElements elements = getCompiledElements();
+        if (elements.externalFormat() == null) {
+            return CompletableFuture.completedFuture(buildKey(player, elements.extractors(), NO_VALUES));
+        }
+        return Placeholder.replace(elements.externalFormat(), plugin, player)
+                .thenApply(s -> buildKey(player, elements.extractors(), s.split(DELIMITER, -1)));
     }
 
-    private String handleList(TabPlayer player, List<String> values) {
-        String result = String.join("", values);
+    // Get the sorting elements compiled into extractors, compiling them again if the config has been reloaded
+    @NotNull
+    private CompiledElements getCompiledElements() {
+        final List<String> elements = plugin.getRuntimeConfig().getSortingElements();
+        CompiledElements current = compiled;
+        if (current == null || current.source() != elements) {
+            current = CompiledElements.compile(elements);
+            compiled = current;
+        }
+        return current;
+    }
 
-        if (result.length() > 12) {
-            result = result.substring(0, 12);
-            plugin.log(Level.WARN, "Sorting element list is too long, truncating to 16 characters");
+    @NotNull
+    private String buildKey(@NotNull TabPlayer player, @NotNull SortKeyExtractor[] extractors,
+                            @NotNull String[] external) {
+        final StringBuilder key = builder.get();
+        key.setLength(0);
+        for (SortKeyExtractor extractor : extractors) {
+            if (key.length() > KEY_LENGTH) {
+                break;
+            }
+            extractor.write(plugin, player, external, key);
         }
 
-        result += player.getPlayer().getUniqueId().toString().substring(0, 4); // Make unique
+        if (key.length() > KEY_LENGTH) {
+            key.setLength(KEY_LENGTH);
+            warnTruncated();
+        }
 
-        return result;
+        // Make unique
+        appendBits(player.getPlayer().getUniqueId().getMostSignificantBits() >>> (Long.SIZE - SUFFIX_LENGTH * CHAR_BITS),
+                SUFFIX_LENGTH, key);
+        return key.toString();
     }
 
-    private String adaptValue(String value) {
-        if (value.isEmpty()) {
-            return "";
+    // Log that sort keys were truncated, at most once per interval
+    private void warnTruncated() {
+        truncatedKeys.incrementAndGet();
+        final long now = System.currentTimeMillis();
+        final long last = lastTruncationWarning.get();
+        if (now - last < TRUNCATION_WARNING_INTERVAL || !lastTruncationWarning.compareAndSet(last, now)) {
+            return;
         }
+        plugin.log(Level.WARN, String.format("Sorting keys were truncated to %d characters %d time(s); "
+                + "list fewer sorting placeholders for players to be sorted by all of them",
+                KEY_LENGTH, truncatedKeys.getAndSet(0)));
+    }
 
-        if (value.matches("[0-9]+")) {
-            double parsed = Double.parseDouble(value);
-            return compressNumber(Integer.MAX_VALUE / 4d - parsed);
+    // Append a sorting element's value, encoding it as a number if it is one
+    static void appendValue(@NotNull String value, @NotNull StringBuilder key) {
+        if (isNumber(value)) {
+            appendNumber(Double.parseDouble(value), key);
+            return;
         }
 
-        if (value.length() > 6) {
-            return value.substring(0, 4);
+        int length = value.length() > TEXT_LENGTH ? TRUNCATED_TEXT_LENGTH : value.length();
+        if (length > 0 && Character.isHighSurrogate(value.charAt(length - 1))) {
+            length--;
+        }
+        for (int i = 0; i < length; i++) {
+            key.append((char) Math.min(value.charAt(i), TEXT_LIMIT));
+        }
+        if (length < TEXT_LENGTH) {
+            key.append(TEXT_TERMINATOR);
         }
-
-        return value;
     }
 
-    public String compressNumber(double number) {
-        int wholePart = (int) number;
-        final char decimalChar = (char) ((number - wholePart) * Character.MAX_VALUE);
-        final List<Character> charList = new ArrayList<>();
-
-        while (wholePart > 0) {
-            char digit = (char) (wholePart % Character.MAX_VALUE);
+    // Append a number so that higher numbers sort first
+    static void appendNumber(double value, @NotNull StringBuilder key) {
+        final long bits = Double.doubleToLongBits(value == 0 ? 0d : value);
+        final long ascending = bits < 0 ? ~bits : bits | Long.MIN_VALUE;
+        appendBits(~ascending >>> (Long.SIZE - NUMBER_LENGTH * CHAR_BITS), NUMBER_LENGTH, key);
+    }
 
-            charList.add(0, digit);
+    // Append the lowest length * CHAR_BITS bits of a value, most significant first
+    static void appendBits(long bits, int length, @NotNull StringBuilder key) {
+        for (int i = length - 1; i >= 0; i--) {
+            key.append((char) (CHAR_OFFSET + ((bits >>> (i * CHAR_BITS)) & ((1 << CHAR_BITS) - 1))));
+        }
+    }
 
-            wholePart /= Character.MAX_VALUE;
+    // Whether the value is a whole or decimal number, optionally negative
+    private static boolean isNumber(@NotNull String value) {
+        final int start = value.startsWith("-") ? 1 : 0;
+        boolean digits = false;
+        boolean point = false;
+        for (int i = start; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (c == '.' && digits && !point && i < value.length() - 1) {
+                point = true;
+            } else {
+                return false;
+            }
         }
+        return digits;
+    }
 
-        if (charList.isEmpty()) {
-            charList.add((char) 0);
+    /**
+     * The configured sorting elements, compiled into extractors
+     *
+     * @param source         the sorting elements the extractors were compiled from
+     * @param extractors     the compiled extractors, in order
+     * @param externalFormat the elements resolved through PAPIProxyBridge joined into one format,
+     *                       or {@code null} if there are none
+     */
+    private record CompiledElements(@NotNull List<String> source, @NotNull SortKeyExtractor[] extractors,
+                                    String externalFormat) {
+
+        @NotNull
+        private static CompiledElements compile(@NotNull List<String> elements) {
+            final SortKeyExtractor[] extractors = new SortKeyExtractor[elements.size()];
+            final List<String> external = new ArrayList<>();
+            for (int i = 0; i < extractors.length; i++) {
+                extractors[i] = SortKeyExtractor.compile(elements.get(i), external.size());
+                if (extractors[i].isExternal()) {
+                    external.add(elements.get(i));
+                }
+            }
+            return new CompiledElements(elements, extractors,
+                    external.isEmpty() ? null : String.join(DELIMITER, external));
         }
 
-        return charList.stream().map(String::valueOf).collect(Collectors.joining()) + decimalChar;
     }
-}
 
+}
@@ -25,46 +25,64 @@ import com.velocitypowered.api.event.player.ServerPostConnectEvent;
 import com.velocitypowered.api.event.proxy.ProxyReloadEvent;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ServerConnection;
-import com.velocitypowered.api.proxy.player.TabList;
-import com.velocitypowered.api.proxy.player.TabListEntry;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import com.velocitypowered.api.proxy.server.ServerInfo;
 import com.velocitypowered.api.scheduler.ScheduledTask;
 import net.kyori.adventure.text.Component;
 import net.william278.velocitab.Velocitab;
 import net.william278.velocitab.api.PlayerAddedToTabEvent;
+import net.william278.velocitab.config.ConfigDiff;
 import net.william278.velocitab.config.Placeholder;
+import net.william278.velocitab.config.PlaceholderTemplate;
+import net.william278.velocitab.config.RuntimeConfig;
+import net.william278.velocitab.config.ServerGroupIndex;
+import net.william278.velocitab.packet.ScoreboardManager;
 import net.william278.velocitab.player.Role;
 import net.william278.velocitab.player.TabPlayer;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.event.Level;
 
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.TimeUnit;
 
 /**
  * The main class for tracking the server TAB list
  */
 public class PlayerTabList {
+    private static final long FLUSH_INTERVAL = 50;
+    private static final long SCHEDULE_INTERVAL = 50;
+
     private final Velocitab plugin;
     private final ConcurrentHashMap<UUID, TabPlayer> players;
-    private final ConcurrentLinkedQueue<String> fallbackServers;
-    private ScheduledTask updateTask;
+    private final Map<String, Set<TabPlayer>> serverMembers;
+    private final UpdateStatistics statistics;
+    private final Map<String, SharedFrame> sharedFrames;
+    private final ScheduledTask flushTask;
+    private final Map<String, Long> animationFrames;
+    private final Map<String, long[]> lastUpdates;
+    private final ScheduledTask updateTask;
 
     public PlayerTabList(@NotNull Velocitab plugin) {
         this.plugin = plugin;
         this.players = new ConcurrentHashMap<>();
-        this.fallbackServers = new ConcurrentLinkedQueue<>();
-
-        // If the update time is set to 0 do not schedule the updater
-        if (plugin.getSettings().getUpdateRate() > 0) {
-            this.updatePeriodically(plugin.getSettings().getUpdateRate());
-        }
+        this.serverMembers = new ConcurrentHashMap<>();
+        this.statistics = new UpdateStatistics();
+        this.sharedFrames = new ConcurrentHashMap<>();
+        this.flushTask = flushPeriodically();
+        this.animationFrames = new ConcurrentHashMap<>();
+        this.lastUpdates = new ConcurrentHashMap<>();
+        this.updateTask = updatePeriodically();
     }
 
     /**
@@ -77,6 +95,16 @@ public class PlayerTabList {
         return Optional.ofNullable(players.get(player.getUniqueId()));
     }
 
+    /**
+     * Get the counters of work skipped and done by periodic updates
+     *
+     * @return the update statistics
+     */
+    @NotNull
+    public UpdateStatistics getStatistics() {
+        return statistics;
+    }
+
 
     /**
      * Loads the tab list for all players connected to the server.
@@ -101,6 +129,8 @@ public class PlayerTabList {
      * Removes the player's entry from the tab list of all other players on the same group servers.
      */
     public void close() {
+        flushTask.cancel();
+        updateTask.cancel();
         plugin.getServer().getAllPlayers().forEach(p -> {
             final Optional<ServerConnection> server = p.getCurrentServer();
             if (server.isEmpty()) return;
@@ -122,6 +152,13 @@ public class PlayerTabList {
 
         final RegisteredServer previousServer = event.getPreviousServer();
 
+        // Rebuild the server group index if the server was registered after it was built
+        joined.getCurrentServer().map(ServerConnection::getServer).ifPresent(server -> {
+            if (!plugin.getServerGroupIndex().isIndexed(server)) {
+                plugin.rebuildServerGroupIndex();
+            }
+        });
+
         // Get the servers in the group from the joined server name
         // If the server is not in a group, use fallback
         final Optional<List<String>> serversInGroup = getGroupNames(joined.getCurrentServer()
@@ -131,10 +168,11 @@ public class PlayerTabList {
 
         // If the server is not in a group, use fallback.
         // If fallback is disabled, permit the player to switch excluded servers without a header or footer override
-        if (serversInGroup.isEmpty() &&
-                (previousServer != null && !this.fallbackServers.contains(previousServer.getServerInfo().getName()))) {
+        if (serversInGroup.isEmpty() && previousServer != null) {
             event.getPlayer().sendPlayerListHeaderAndFooter(Component.empty(), Component.empty());
-            players.remove(event.getPlayer().getUniqueId());
+            removeOfflinePlayer(event.getPlayer());
+            // Remove the previous group's teams from clients which kept them
+            plugin.getScoreboardManager().ifPresent(manager -> manager.resendAllTeams(joined));
             return;
         }
 
@@ -145,41 +183,49 @@ public class PlayerTabList {
         // Add the player to the tracking list if they are not already listed
         final TabPlayer tabPlayer = getTabPlayer(joined).orElseGet(() -> createTabPlayer(joined));
         players.putIfAbsent(joined.getUniqueId(), tabPlayer);
+        index(tabPlayer);
+
+        // Switching server changes the group, and clears the client's TAB list
+        tabPlayer.markDirty();
+        tabPlayer.getShadowTabList().clear();
 
-        final boolean isVanished = plugin.getVanishManager().isVanished(joined.getUsername());
+        plugin.getVanishManager().invalidate(joined.getUsername());
         // Update lists
         plugin.getServer().getScheduler()
                 .buildTask(plugin, () -> {
-                    final TabList tabList = joined.getTabList();
-                    for (final TabPlayer player : players.values()) {
-                        // Skip players on other servers if the setting is enabled
-                        if (plugin.getSettings().isOnlyListPlayersInSameGroup()
-                                && !serversInGroup.contains(player.getServerName())) {
-                            continue;
-                        }
+                    final ShadowTabList tabList = tabPlayer.getShadowTabList();
+                    final CompletableFuture<Component> displayName = tabPlayer.getDisplayName(plugin);
+
+                    // Look up vanish states and who can see the joined player in bulk, rather than per pair
+                    final Collection<TabPlayer> listed = getListedPlayers(serversInGroup);
+                    final List<String> names = listed.stream()
+                            .map(player -> player.getPlayer().getUsername())
+                            .toList();
+                    final Set<String> canSeeJoined = plugin.getVanishManager().isVanished(joined.getUsername())
+                            ? plugin.getVanishManager().getViewersWhoCanSee(joined.getUsername(), names)
+                            : new HashSet<>(names);
+                    final Set<String> vanished = plugin.getVanishManager().getVanished(names);
+                    for (final TabPlayer player : listed) {
                         // check if current player can see the joined player
-                        if (!isVanished || plugin.getVanishManager().canSee(player.getPlayer().getUsername(), joined.getUsername())) {
-                            addPlayerToTabList(player, tabPlayer);
+                        if (canSeeJoined.contains(player.getPlayer().getUsername())) {
+                            addPlayerToTabList(player, tabPlayer, displayName);
                         } else {
-                            player.getPlayer().getTabList().removeEntry(joined.getUniqueId());
+                            player.getShadowTabList().removeEntry(joined.getUniqueId());
                         }
                         // check if joined player can see current player
-                        if ((plugin.getVanishManager().isVanished(player.getPlayer().getUsername()) &&
+                        if ((vanished.contains(player.getPlayer().getUsername()) &&
                                 !plugin.getVanishManager().canSee(joined.getUsername(), player.getPlayer().getUsername())) && player.getPlayer() != joined) {
                             tabList.removeEntry(player.getPlayer().getUniqueId());
                         } else {
-                            tabList.getEntry(player.getPlayer().getUniqueId()).ifPresentOrElse(
-                                    entry -> player.getDisplayName(plugin).thenAccept(entry::setDisplayName),
-                                    () -> createEntry(player, tabList).thenAccept(tabList::addEntry)
-                            );
+                            player.getDisplayName(plugin).thenAccept(name -> tabList.setEntry(player, name));
                         }
 
-                        player.sendHeaderAndFooter(this);
+                        updateHeaderAndFooter(player);
                     }
 
                     plugin.getScoreboardManager().ifPresent(s -> {
                         s.resendAllTeams(joined);
-                        tabPlayer.getTeamName(plugin).thenAccept(t -> s.updateRole(joined, t));
+                        updateTeam(tabPlayer, s);
                     });
 
                     // Fire event without listening for result
@@ -189,39 +235,13 @@ public class PlayerTabList {
                 .schedule();
     }
 
-    @NotNull
-    private CompletableFuture<TabListEntry> createEntry(@NotNull TabPlayer player, @NotNull TabList tabList) {
-        return player.getDisplayName(plugin).thenApply(name -> TabListEntry.builder()
-                .profile(player.getPlayer().getGameProfile())
-                .displayName(name)
-                .latency(0)
-                .tabList(tabList)
-                .build());
-    }
-
-    private TabListEntry createEntry(@NotNull TabPlayer player, @NotNull TabList tabList, @NotNull Component displayName) {
-        return TabListEntry.builder()
-                .profile(player.getPlayer().getGameProfile())
-                .displayName(displayName)
-                .latency(0)
-                .tabList(tabList)
-                .build();
-    }
-
-    private void addPlayerToTabList(@NotNull TabPlayer player, @NotNull TabPlayer newPlayer) {
+    private void addPlayerToTabList(@NotNull TabPlayer player, @NotNull TabPlayer newPlayer,
+                                    @NotNull CompletableFuture<Component> displayName) {
         if (newPlayer.getPlayer().getUniqueId().equals(player.getPlayer().getUniqueId())) {
             return;
         }
 
-        player.getPlayer()
-                .getTabList().getEntries().stream()
-                .filter(e -> e.getProfile().getId().equals(newPlayer.getPlayer().getUniqueId())).findFirst()
-                .ifPresentOrElse(
-                        entry -> newPlayer.getDisplayName(plugin).thenAccept(entry::setDisplayName),
-                        () -> createEntry(newPlayer, player.getPlayer().getTabList())
-                                .thenAccept(entry -> player.getPlayer().getTabList().addEntry(entry))
-                );
-
+        displayName.thenAccept(name -> player.getShadowTabList().setEntry(newPlayer, name));
     }
 
     @Subscribe
@@ -232,25 +252,42 @@ public class PlayerTabList {
 
         // Remove the player from the tracking list, Print warning if player was not removed
         final UUID uuid = event.getPlayer().getUniqueId();
-        if (players.remove(uuid) == null) {
+        final TabPlayer removed = players.remove(uuid);
+        if (removed == null) {
             plugin.log(String.format("Failed to remove disconnecting player %s (UUID: %s)",
                     event.getPlayer().getUsername(), uuid));
+        } else {
+            unindex(removed);
         }
 
-        // Remove the player from the tab list of all other players
-        plugin.getServer().getAllPlayers().forEach(player -> player.getTabList().removeEntry(uuid));
+        // Remove the player from the tab list of all other players, including those in groups they have left
+        removeFromAllTabLists(uuid);
 
         // Update the tab list of all players
         plugin.getServer().getScheduler()
-                .buildTask(plugin, () -> players.values().forEach(player -> {
-                    player.getPlayer().getTabList().removeEntry(uuid);
-                    player.sendHeaderAndFooter(this);
-                }))
+                .buildTask(plugin, () -> {
+                    removeFromAllTabLists(uuid);
+                    players.values().forEach(this::updateHeaderAndFooter);
+                })
                 .delay(500, TimeUnit.MILLISECONDS)
                 .schedule();
         // Delete player team
         plugin.getScoreboardManager().ifPresent(manager -> manager.resetCache(event.getPlayer()));
+        plugin.getVanishManager().invalidate(event.getPlayer().getUsername());
+        plugin.getPAPIProxyBridgeHook().ifPresent(hook -> hook.invalidate(uuid));
+
+    }
 
+    // Remove a player from the tab list of every online player, through their shadow list if they are tracked
+    private void removeFromAllTabLists(@NotNull UUID uuid) {
+        plugin.getServer().getAllPlayers().forEach(player -> {
+            final TabPlayer tracked = players.get(player.getUniqueId());
+            if (tracked != null) {
+                tracked.getShadowTabList().removeEntry(uuid);
+            } else {
+                player.getTabList().removeEntry(uuid);
+            }
+        });
     }
 
     @NotNull
@@ -260,40 +297,105 @@ public class PlayerTabList {
         );
     }
 
-    // Update a player's name in the tab list
+    /**
+     * Send the outputs of a player which have been marked dirty, such as after their role or custom name changed.
+     * Outputs which are not updated periodically would otherwise only be sent again when the player switches server.
+     *
+     * @param tabPlayer The player to update
+     */
+    public void updateDirtyOutputs(@NotNull TabPlayer tabPlayer) {
+        if (tabPlayer.isDirty(TabPlayer.Output.TEAM)) {
+            updatePlayer(tabPlayer);
+        }
+        if (tabPlayer.isDirty(TabPlayer.Output.DISPLAY_NAME)) {
+            updatePlayerDisplayName(tabPlayer);
+        }
+        if (tabPlayer.isDirty(TabPlayer.Output.HEADER_FOOTER)) {
+            updateHeaderAndFooter(tabPlayer);
+        }
+    }
+
+    // Update a player's team in the tab list, if it is dirty or could have changed
     public void updatePlayer(@NotNull TabPlayer tabPlayer) {
+        updatePlayer(tabPlayer, true, true);
+    }
+
+    // Update a player's sort key and/or nametag, if they are dirty or could have changed
+    private void updatePlayer(@NotNull TabPlayer tabPlayer, boolean sorting, boolean nametags) {
         if (!tabPlayer.getPlayer().isActive()) {
             removeOfflinePlayer(tabPlayer.getPlayer());
             return;
         }
 
-        tabPlayer.getTeamName(plugin).thenAccept(teamName -> {
-            if (teamName.isBlank()) {
-                return;
+        final boolean dirty = tabPlayer.clearDirty(TabPlayer.Output.TEAM);
+        final boolean sortKey = dirty || (sorting && isSortingDynamic());
+        final boolean nametag = dirty || (nametags && isNametagDynamic(tabPlayer));
+        if (!sortKey && !nametag) {
+            statistics.skipped(TabPlayer.Output.TEAM);
+            return;
+        }
+        statistics.recomputed(TabPlayer.Output.TEAM);
+
+        plugin.getScoreboardManager().ifPresent(manager -> updateTeam(tabPlayer, manager, sortKey, nametag));
+    }
+
+    // Send a player's team to their group, unless its name and nametag are unchanged since it was last sent
+    private void updateTeam(@NotNull TabPlayer tabPlayer, @NotNull ScoreboardManager manager) {
+        updateTeam(tabPlayer, manager, true, true);
+    }
+
+    // Send a player's team to their group, reusing the last sort key or nametag sent if it is not to be recomputed
+    private void updateTeam(@NotNull TabPlayer tabPlayer, @NotNull ScoreboardManager manager,
+                            boolean sortKey, boolean nametags) {
+        final Optional<String> lastTeamName = sortKey ? Optional.empty() : tabPlayer.getLastTeamName();
+        final Optional<String> lastNametag = nametags ? Optional.empty() : tabPlayer.getLastNametag();
+        final CompletableFuture<String> teamName = lastTeamName
+                .map(CompletableFuture::completedFuture)
+                .orElseGet(() -> tabPlayer.getTeamName(plugin));
+        teamName.thenCompose(name -> {
+            if (name.isBlank()) {
+                return CompletableFuture.completedFuture(null);
             }
-            plugin.getScoreboardManager().ifPresent(manager -> manager.updateRole(
-                    tabPlayer.getPlayer(), teamName
-            ));
+            final CompletableFuture<String> nametag = lastNametag
+                    .map(CompletableFuture::completedFuture)
+                    .orElseGet(() -> tabPlayer.getNametag(plugin));
+            return nametag.thenAccept(tag -> {
+                if (tabPlayer.setLastTeam(name, tag)) {
+                    manager.updateRole(tabPlayer.getPlayer(), name, tag);
+                }
+            });
+        }).exceptionally(e -> {
+            plugin.log(Level.ERROR, "Failed to update team for " + tabPlayer.getPlayer().getUsername(), e);
+            return null;
         });
     }
 
+    // Update a player's display name for all viewers, if it is dirty or could have changed
     public void updatePlayerDisplayName(@NotNull TabPlayer tabPlayer) {
+        final String serverGroup = tabPlayer.getServerGroup(plugin);
+        if (!tabPlayer.clearDirty(TabPlayer.Output.DISPLAY_NAME)
+                && !Placeholder.isDynamic(plugin.getRuntimeConfig().getFormat(serverGroup), plugin)) {
+            statistics.skipped(TabPlayer.Output.DISPLAY_NAME);
+            return;
+        }
+        statistics.recomputed(TabPlayer.Output.DISPLAY_NAME);
+
         final Component lastDisplayName = tabPlayer.getLastDisplayname();
         tabPlayer.getDisplayName(plugin).thenAccept(displayName -> {
             if (displayName == null || displayName.equals(lastDisplayName)) {
                 return;
             }
+            statistics.sent(TabPlayer.Output.DISPLAY_NAME);
 
             final boolean isVanished = plugin.getVanishManager().isVanished(tabPlayer.getPlayer().getUsername());
 
-            players.values().forEach(player -> {
+            final UUID uuid = tabPlayer.getPlayer().getUniqueId();
+            getListedPlayers(tabPlayer).forEach(player -> {
                 if (isVanished && !plugin.getVanishManager().canSee(player.getPlayer().getUsername(), tabPlayer.getPlayer().getUsername())) {
                     return;
                 }
 
-                player.getPlayer().getTabList().getEntries().stream()
-                        .filter(e -> e.getProfile().getId().equals(tabPlayer.getPlayer().getUniqueId())).findFirst()
-                        .ifPresent(entry -> entry.setDisplayName(displayName));
+                player.getShadowTabList().updateDisplayName(uuid, displayName);
             });
         });
     }
@@ -303,63 +405,265 @@ public class PlayerTabList {
         players.values().forEach(this::updatePlayerDisplayName);
     }
 
-    // Get the component for the TAB list header
-    public CompletableFuture<Component> getHeader(@NotNull TabPlayer player) {
-        final String header = plugin.getSettings().getHeader(player.getServerGroup(plugin), player.getHeaderIndex());
-        player.incrementHeaderIndex(plugin);
+    /**
+     * Update the header and footer of a player's TAB list, if they are dirty or could have changed.
+     * The header and footer are only resent if their resolved text differs from what was last sent.
+     *
+     * @param player The player to update
+     */
+    public void updateHeaderAndFooter(@NotNull TabPlayer player) {
+        updateHeaderAndFooter(player, EnumSet.of(RuntimeConfig.ScheduledOutput.HEADER,
+                RuntimeConfig.ScheduledOutput.FOOTER), Set.of());
+    }
+
+    // Update the header and/or footer of a player's TAB list: a part is recomputed if it is due and could have
+    // changed, or if its animation frame changed; otherwise the text last sent for it is sent again with the other
+    private void updateHeaderAndFooter(@NotNull TabPlayer player, @NotNull Set<RuntimeConfig.ScheduledOutput> due,
+                                       @NotNull Set<RuntimeConfig.ScheduledOutput> newFrames) {
+        final RuntimeConfig config = plugin.getRuntimeConfig();
+        final String serverGroup = config.getServerGroupIndex().getGroupName(player.getServerName());
+        final long now = System.currentTimeMillis();
+        final String header = config.getHeader(serverGroup, config.getHeaderFrame(serverGroup, now));
+        final String footer = config.getFooter(serverGroup, config.getFooterFrame(serverGroup, now));
+
+        final boolean dirty = player.clearDirty(TabPlayer.Output.HEADER_FOOTER);
+        final String lastHeader = player.getLastHeader();
+        final String lastFooter = player.getLastFooter();
+        final boolean updateHeader = dirty || lastHeader == null
+                || isPartDue(RuntimeConfig.ScheduledOutput.HEADER, header, due, newFrames);
+        final boolean updateFooter = dirty || lastFooter == null
+                || isPartDue(RuntimeConfig.ScheduledOutput.FOOTER, footer, due, newFrames);
+        if (!updateHeader && !updateFooter) {
+            statistics.skipped(TabPlayer.Output.HEADER_FOOTER);
+            return;
+        }
+        statistics.recomputed(TabPlayer.Output.HEADER_FOOTER);
+
+        final CompletableFuture<String> replacedHeader = updateHeader
+                ? resolveFrame(serverGroup, header, player)
+                : CompletableFuture.completedFuture(lastHeader);
+        final CompletableFuture<String> replacedFooter = updateFooter
+                ? resolveFrame(serverGroup, footer, player)
+                : CompletableFuture.completedFuture(lastFooter);
+        replacedHeader.thenCombine(replacedFooter, (resolvedHeader, resolvedFooter) -> {
+                    final boolean changed = player.setLastHeaderAndFooter(resolvedHeader, resolvedFooter);
+                    if (!changed && !dirty && !plugin.getFormatter().isPlayerDependent(plugin)) {
+                        return false;
+                    }
+                    player.getPlayer().sendPlayerListHeaderAndFooter(
+                            plugin.getFormatter().format(resolvedHeader, player, plugin),
+                            plugin.getFormatter().format(resolvedFooter, player, plugin)
+                    );
+                    return true;
+                })
+                .thenAccept(sent -> {
+                    if (sent) {
+                        statistics.sent(TabPlayer.Output.HEADER_FOOTER);
+                    }
+                });
+    }
+
+    // Whether the header or footer should be recomputed on a scheduled update
+    private boolean isPartDue(@NotNull RuntimeConfig.ScheduledOutput part, @NotNull String format,
+                              @NotNull Set<RuntimeConfig.ScheduledOutput> due,
+                              @NotNull Set<RuntimeConfig.ScheduledOutput> newFrames) {
+        return newFrames.contains(part) || (due.contains(part) && Placeholder.isDynamic(format, plugin));
+    }
+
+    /**
+     * Resolve the placeholders of a header or footer frame for a player. A frame whose placeholders are shared by
+     * every player in the server group is resolved once per group and scheduler tick, and the text reused for the
+     * other players in the group; the formatter's component cache then parses it once for all of them.
+     *
+     * @param serverGroup the name of the player's server group
+     * @param format      the header or footer frame
+     * @param player      the player the frame is being resolved for
+     * @return the frame with placeholders replaced
+     */
+    @NotNull
+    private CompletableFuture<String> resolveFrame(@NotNull String serverGroup, @NotNull String format,
+                                                   @NotNull TabPlayer player) {
+        if (PlaceholderTemplate.of(format).getScope().compareTo(Placeholder.Scope.GROUP) > 0) {
+            return Placeholder.replace(format, plugin, player);
+        }
 
-        return Placeholder.replace(header, plugin, player)
-                .thenApply(replaced -> plugin.getFormatter().format(replaced, player, plugin));
+        final long now = System.currentTimeMillis();
+        return sharedFrames.compute(serverGroup + '\0' + format, (key, shared) ->
+                shared != null && now - shared.resolvedAt() < SCHEDULE_INTERVAL ? shared
+                        : new SharedFrame(Placeholder.replace(format, plugin, player), now)).resolved();
     }
 
-    // Get the component for the TAB list footer
-    public CompletableFuture<Component> getFooter(@NotNull TabPlayer player) {
-        final String footer = plugin.getSettings().getFooter(player.getServerGroup(plugin), player.getFooterIndex());
-        player.incrementFooterIndex(plugin);
+    // Whether a player's nametag could change without them being marked dirty
+    private boolean isNametagDynamic(@NotNull TabPlayer player) {
+        return Placeholder.isDynamic(plugin.getRuntimeConfig().getNametag(player.getServerGroup(plugin)), plugin);
+    }
 
-        return Placeholder.replace(footer, plugin, player)
-                .thenApply(replaced -> plugin.getFormatter().format(replaced, player, plugin));
+    // Whether players' sort keys could change without them being marked dirty
+    private boolean isSortingDynamic() {
+        return plugin.getSettings().isSortPlayers() && plugin.getRuntimeConfig().getSortingElements().stream()
+                .anyMatch(element -> Placeholder.isDynamic(element, plugin));
     }
 
-    // Update the tab list periodically
-    private void updatePeriodically(int updateRate) {
-        updateTask = plugin.getServer().getScheduler()
+    // Send each player's queued TAB list changes once per tick, coalescing changes made within the same tick
+    @NotNull
+    private ScheduledTask flushPeriodically() {
+        return plugin.getServer().getScheduler()
+                .buildTask(plugin, () -> players.values()
+                        .forEach(player -> player.getShadowTabList().flush(plugin)))
+                .repeat(FLUSH_INTERVAL, TimeUnit.MILLISECONDS)
+                .schedule();
+    }
+
+    // Run the animation clock and each output's update schedule, for each server group
+    @NotNull
+    private ScheduledTask updatePeriodically() {
+        return plugin.getServer().getScheduler()
                 .buildTask(plugin, () -> {
                     if (players.isEmpty()) {
                         return;
                     }
-                    players.values().forEach(player -> {
-                        this.updatePlayer(player);
-                        player.sendHeaderAndFooter(this);
+                    final RuntimeConfig config = plugin.getRuntimeConfig();
+                    final long now = System.currentTimeMillis();
+                    final Map<String, Set<RuntimeConfig.ScheduledOutput>> animated = getNewFrames(config, now);
+                    final Map<String, Set<RuntimeConfig.ScheduledOutput>> due = getDueOutputs(config, now);
+                    if (animated.isEmpty() && due.isEmpty()) {
+                        return;
+                    }
+                    if (!due.isEmpty()) {
+                        statistics.nextCycle();
+                        plugin.getVanishManager().invalidateAll();
+                        Placeholder.nextCycle();
+                    }
+
+                    final ServerGroupIndex index = config.getServerGroupIndex();
+                    serverMembers.forEach((server, members) -> {
+                        final String group = index.getGroupName(server);
+                        final Set<RuntimeConfig.ScheduledOutput> outputs = due.getOrDefault(group, Set.of());
+                        final Set<RuntimeConfig.ScheduledOutput> newFrames = animated.getOrDefault(group, Set.of());
+                        if (outputs.isEmpty() && newFrames.isEmpty()) {
+                            return;
+                        }
+                        members.forEach(player -> updateScheduled(player, outputs, newFrames));
                     });
-                    updateDisplayNames();
                 })
-                .repeat(Math.max(200, updateRate), TimeUnit.MILLISECONDS)
+                .repeat(SCHEDULE_INTERVAL, TimeUnit.MILLISECONDS)
                 .schedule();
     }
 
+    // Get the parts of the header and footer of each server group whose frame has changed since the last run
+    @NotNull
+    private Map<String, Set<RuntimeConfig.ScheduledOutput>> getNewFrames(@NotNull RuntimeConfig config, long now) {
+        final Map<String, Set<RuntimeConfig.ScheduledOutput>> changed = new HashMap<>();
+        animationFrames.keySet().retainAll(config.getAnimatedGroups());
+        for (String group : config.getAnimatedGroups()) {
+            final int header = config.getHeaderFrame(group, now);
+            final int footer = config.getFooterFrame(group, now);
+            final Long previous = animationFrames.put(group, ((long) header << Integer.SIZE) | (footer & 0xFFFFFFFFL));
+            if (previous == null) {
+                continue;
+            }
+
+            final Set<RuntimeConfig.ScheduledOutput> parts = EnumSet.noneOf(RuntimeConfig.ScheduledOutput.class);
+            if ((int) (previous >>> Integer.SIZE) != header) {
+                parts.add(RuntimeConfig.ScheduledOutput.HEADER);
+            }
+            if (previous.intValue() != footer) {
+                parts.add(RuntimeConfig.ScheduledOutput.FOOTER);
+            }
+            if (!parts.isEmpty()) {
+                changed.put(group, parts);
+            }
+        }
+        return changed;
+    }
+
+    // Get the outputs of each server group with players which are due to be updated, recording that they have been
+    @NotNull
+    private Map<String, Set<RuntimeConfig.ScheduledOutput>> getDueOutputs(@NotNull RuntimeConfig config, long now) {
+        final Map<String, Set<RuntimeConfig.ScheduledOutput>> due = new HashMap<>();
+        final Set<String> groups = new HashSet<>();
+        serverMembers.keySet().forEach(server -> groups.add(config.getServerGroupIndex().getGroupName(server)));
+        for (String group : groups) {
+            final long[] last = lastUpdates.computeIfAbsent(group,
+                    name -> new long[RuntimeConfig.ScheduledOutput.values().length]);
+            final Set<RuntimeConfig.ScheduledOutput> outputs = EnumSet.noneOf(RuntimeConfig.ScheduledOutput.class);
+            for (RuntimeConfig.ScheduledOutput output : RuntimeConfig.ScheduledOutput.values()) {
+                final long rate = config.getUpdateRate(group, output);
+                if (rate > 0 && now - last[output.ordinal()] >= rate) {
+                    last[output.ordinal()] = now;
+                    outputs.add(output);
+                }
+            }
+            if (!outputs.isEmpty()) {
+                due.put(group, outputs);
+            }
+        }
+        return due;
+    }
+
+    // Update the outputs of a player which are due, and their header or footer if its animation frame changed
+    private void updateScheduled(@NotNull TabPlayer player, @NotNull Set<RuntimeConfig.ScheduledOutput> outputs,
+                                 @NotNull Set<RuntimeConfig.ScheduledOutput> newFrames) {
+        final boolean sorting = outputs.contains(RuntimeConfig.ScheduledOutput.SORTING);
+        final boolean nametags = outputs.contains(RuntimeConfig.ScheduledOutput.NAMETAGS);
+        if (sorting || nametags) {
+            this.updatePlayer(player, sorting, nametags);
+        }
+        if (!newFrames.isEmpty() || outputs.contains(RuntimeConfig.ScheduledOutput.HEADER)
+                || outputs.contains(RuntimeConfig.ScheduledOutput.FOOTER)) {
+            this.updateHeaderAndFooter(player, outputs, newFrames);
+        }
+        if (outputs.contains(RuntimeConfig.ScheduledOutput.DISPLAY_NAMES)) {
+            this.updatePlayerDisplayName(player);
+        }
+        if (outputs.contains(RuntimeConfig.ScheduledOutput.LATENCY)) {
+            this.updateLatency(player);
+        }
+    }
+
+    // Update a player's latency for the players listing them
+    public void updateLatency(@NotNull TabPlayer tabPlayer) {
+        final UUID uuid = tabPlayer.getPlayer().getUniqueId();
+        final int latency = (int) tabPlayer.getPlayer().getPing();
+        getListedPlayers(tabPlayer).forEach(player -> {
+            if (player.getShadowTabList().containsEntry(uuid)) {
+                player.getShadowTabList().updateLatency(uuid, latency);
+            }
+        });
+    }
+
     /**
-     * Update the TAB list for all players when a plugin or proxy reload is performed
+     * Update the TAB list when a plugin or proxy reload is performed. Only the outputs of players whose formats,
+     * sorting or server group changed are recomputed and resent.
+     *
+     * @param diff the differences between the previous and reloaded config
      */
-    public void reloadUpdate() {
-        if (players.isEmpty()) {
+    public void reloadUpdate(@NotNull ConfigDiff diff) {
+        if (diff.isEmpty() || players.isEmpty()) {
             return;
         }
 
-        if (updateTask != null) {
-            updateTask.cancel();
-        }
-        // If the update time is set to 0 do not schedule the updater
-        if (plugin.getSettings().getUpdateRate() > 0) {
-            this.updatePeriodically(plugin.getSettings().getUpdateRate());
-        } else {
-            players.values().forEach(player -> {
-                this.updatePlayer(player);
-                player.sendHeaderAndFooter(this);
-            });
-            updateDisplayNames();
+        // Shared values only go stale if a setting affecting every player changed
+        if (diff.global()) {
+            Placeholder.nextCycle();
         }
+        sharedFrames.clear();
+
+        players.values().forEach(player -> {
+            final Set<TabPlayer.Output> changed = diff.getChangedOutputs(
+                    player.getServerName(), player.getServerGroup(plugin));
+            changed.forEach(player::markDirty);
 
+            if (changed.contains(TabPlayer.Output.TEAM)) {
+                this.updatePlayer(player);
+            }
+            if (changed.contains(TabPlayer.Output.HEADER_FOOTER)) {
+                this.updateHeaderAndFooter(player);
+            }
+            if (changed.contains(TabPlayer.Output.DISPLAY_NAME)) {
+                this.updatePlayerDisplayName(player);
+            }
+        });
     }
 
     /**
@@ -373,43 +677,28 @@ public class PlayerTabList {
      */
     @NotNull
     public Optional<List<String>> getGroupNames(@NotNull String serverName) {
-        return plugin.getSettings().getServerGroups().values().stream()
-                .filter(servers -> servers.contains(serverName))
-                .findFirst()
-                .or(() -> {
-                    if (!plugin.getSettings().isFallbackEnabled()) {
-                        return Optional.empty();
-                    }
-
-                    if (!this.fallbackServers.contains(serverName)) {
-                        this.fallbackServers.add(serverName);
-                    }
-                    return Optional.of(this.fallbackServers.stream().toList());
-                });
+        return Optional.ofNullable(plugin.getServerGroupIndex().getGroup(serverName))
+                .map(ServerGroupIndex.Group::serverNames);
     }
 
     /**
-     * Get the servers in the same group as the given server, as an optional list of {@link ServerInfo}
+     * Get the registered servers in the same group as the given server
      * <p>
      * If the server is not in a group, use the fallback group
-     * If the fallback is disabled, return an empty optional
+     * If the fallback is disabled, return an empty list
      *
      * @param serverName The server name
      * @return The servers in the same group as the given server, empty if the server is not in a group and fallback is disabled
      */
     @NotNull
     public List<RegisteredServer> getGroupServers(@NotNull String serverName) {
-        return plugin.getServer().getAllServers().stream()
-                .filter(server -> plugin.getSettings().getServerGroups().values().stream()
-                        .filter(servers -> servers.contains(serverName))
-                        .anyMatch(servers -> servers.contains(server.getServerInfo().getName())))
-                .toList();
+        final ServerGroupIndex.Group group = plugin.getServerGroupIndex().getGroup(serverName);
+        return group != null ? group.servers() : List.of();
     }
 
     @Subscribe
     public void proxyReload(@NotNull ProxyReloadEvent event) {
-        plugin.loadSettings();
-        reloadUpdate();
+        reloadUpdate(plugin.loadSettings());
         plugin.log("Velocitab has been reloaded!");
     }
 
@@ -419,79 +708,133 @@ public class PlayerTabList {
      * @param player The player to remove
      */
     public void removeOfflinePlayer(@NotNull Player player) {
-        players.remove(player.getUniqueId());
+        final TabPlayer removed = players.remove(player.getUniqueId());
+        if (removed != null) {
+            unindex(removed);
+        }
+    }
+
+    /**
+     * Get the tracked players who list players on the given servers; that is, the players on those servers,
+     * or every tracked player if players are listed across server groups
+     *
+     * @param serversInGroup the names of the servers in a group
+     * @return the players listing players in the group
+     */
+    @NotNull
+    public Collection<TabPlayer> getListedPlayers(@NotNull List<String> serversInGroup) {
+        if (!plugin.getSettings().isOnlyListPlayersInSameGroup()) {
+            return players.values();
+        }
+
+        final List<TabPlayer> members = new ArrayList<>();
+        serversInGroup.forEach(server -> {
+            final Set<TabPlayer> onServer = serverMembers.get(server);
+            if (onServer != null) {
+                members.addAll(onServer);
+            }
+        });
+        return members;
+    }
+
+    /**
+     * Get the tracked players who list a player; that is, the players in the same server group,
+     * or every tracked player if players are listed across server groups
+     *
+     * @param tabPlayer the player
+     * @return the players listing the player
+     */
+    @NotNull
+    public Collection<TabPlayer> getListedPlayers(@NotNull TabPlayer tabPlayer) {
+        return getListedPlayers(getGroupNames(tabPlayer.getServerName()).orElseGet(List::of));
+    }
+
+    // Move a player to the members of the server they are now on
+    private void index(@NotNull TabPlayer player) {
+        final String previous = player.getServerName();
+        final String current = player.updateServerName();
+        if (!previous.equals(current)) {
+            removeMember(previous, player);
+        }
+        serverMembers.compute(current, (server, members) -> {
+            final Set<TabPlayer> updated = members != null ? members : ConcurrentHashMap.newKeySet();
+            updated.add(player);
+            return updated;
+        });
+    }
+
+    // Remove a player from the members of the server they were last on
+    private void unindex(@NotNull TabPlayer player) {
+        removeMember(player.getServerName(), player);
+    }
+
+    private void removeMember(@NotNull String serverName, @NotNull TabPlayer player) {
+        serverMembers.computeIfPresent(serverName, (server, members) -> {
+            members.remove(player);
+            return members.isEmpty() ? null : members;
+        });
     }
 
     public void vanishPlayer(@NotNull TabPlayer tabPlayer) {
-        players.values().forEach(p -> {
+        final Collection<TabPlayer> listed = getListedPlayers(tabPlayer);
+        final Set<String> viewers = plugin.getVanishManager().getViewersWhoCanSee(
+                tabPlayer.getPlayer().getUsername(),
+                listed.stream().map(p -> p.getPlayer().getUsername()).toList()
+        );
+        listed.forEach(p -> {
             if (p.getPlayer().equals(tabPlayer.getPlayer())) {
                 return;
             }
 
-            if (!plugin.getVanishManager().canSee(p.getPlayer().getUsername(), tabPlayer.getPlayer().getUsername())) {
-                p.getPlayer().getTabList().removeEntry(tabPlayer.getPlayer().getUniqueId());
+            if (!viewers.contains(p.getPlayer().getUsername())) {
+                p.getShadowTabList().removeEntry(tabPlayer.getPlayer().getUniqueId());
             }
         });
     }
 
     public void unVanishPlayer(@NotNull TabPlayer tabPlayer) {
-        final UUID uuid = tabPlayer.getPlayer().getUniqueId();
-
-        tabPlayer.getDisplayName(plugin).thenAccept(c -> players.values().forEach(p -> {
+        tabPlayer.getDisplayName(plugin).thenAccept(c -> getListedPlayers(tabPlayer).forEach(p -> {
             if (p.getPlayer().equals(tabPlayer.getPlayer())) {
                 return;
             }
 
-            if (!p.getPlayer().getTabList().containsEntry(uuid)) {
-                p.getPlayer().getTabList().addEntry(createEntry(tabPlayer, p.getPlayer().getTabList(), c));
-            } else {
-                p.getPlayer().getTabList().getEntry(uuid).ifPresent(entry -> entry.setDisplayName(c));
-            }
+            p.getShadowTabList().setEntry(tabPlayer, c);
         }));
 
     }
 
     public void recalculateVanishForPlayer(@NotNull TabPlayer tabPlayer) {
         final Player player = tabPlayer.getPlayer();
-        final Optional<List<String>> serversInGroupOptional = getGroupNames(player.getCurrentServer()
-                .map(ServerConnection::getServerInfo)
-                .map(ServerInfo::getName)
-                .orElse("?"));
-        final List<String> serversInGroup = serversInGroupOptional.orElseGet(ArrayList::new);
-
-        plugin.getServer().getAllPlayers().forEach(p -> {
+        getListedPlayers(tabPlayer).forEach(target -> {
+            final Player p = target.getPlayer();
             if (p.equals(player)) {
                 return;
             }
 
-            final Optional<TabPlayer> targetOptional = getTabPlayer(p);
-
-            if (targetOptional.isEmpty()) {
-                return;
-            }
-
-            final TabPlayer target = targetOptional.get();
-            final String serverName = target.getServerName();
-
-            if (plugin.getSettings().isOnlyListPlayersInSameGroup()
-                    && !serversInGroup.contains(serverName)) {
-                return;
-            }
-
             final boolean canSee = !plugin.getVanishManager().isVanished(p.getUsername()) ||
                     plugin.getVanishManager().canSee(player.getUsername(), p.getUsername());
 
             if (!canSee) {
-                player.getTabList().removeEntry(p.getUniqueId());
+                tabPlayer.getShadowTabList().removeEntry(p.getUniqueId());
                 plugin.getScoreboardManager().ifPresent(s -> s.recalculateVanishForPlayer(tabPlayer, target, false));
             } else {
-                if (!player.getTabList().containsEntry(p.getUniqueId())) {
-                    createEntry(target, player.getTabList()).thenAccept(e -> {
-                        player.getTabList().addEntry(e);
+                if (!tabPlayer.getShadowTabList().containsEntry(p.getUniqueId())) {
+                    target.getDisplayName(plugin).thenAccept(name -> {
+                        tabPlayer.getShadowTabList().setEntry(target, name);
                         plugin.getScoreboardManager().ifPresent(s -> s.recalculateVanishForPlayer(tabPlayer, target, true));
                     });
                 }
             }
         });
     }
+
+    /**
+     * A header or footer frame resolved for a whole server group
+     *
+     * @param resolved   the frame with placeholders replaced
+     * @param resolvedAt when the frame was resolved, in milliseconds since the epoch
+     */
+    private record SharedFrame(@NotNull CompletableFuture<String> resolved, long resolvedAt) {
+    }
+
 }
@@ -0,0 +1,317 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.tab;
+
+import com.velocitypowered.api.network.ProtocolVersion;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.player.TabList;
+import com.velocitypowered.api.proxy.player.TabListEntry;
+import com.velocitypowered.api.util.GameProfile;
+import com.velocitypowered.proxy.connection.client.ConnectedPlayer;
+import com.velocitypowered.proxy.protocol.StateRegistry;
+import com.velocitypowered.proxy.protocol.packet.RemovePlayerInfo;
+import com.velocitypowered.proxy.protocol.packet.UpsertPlayerInfo;
+import com.velocitypowered.proxy.tablist.VelocityTabList;
+import net.kyori.adventure.text.Component;
+import net.william278.velocitab.Velocitab;
+import net.william278.velocitab.player.TabPlayer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.event.Level;
+
+import java.util.*;
+
+/**
+ * A shadow of the entries Velocitab has sent to a player's TAB list, indexed by UUID.
+ * <p>
+ * Updates which would not change what the viewer last received are skipped without touching the Velocity
+ * {@link TabListEntry} API. Other updates are queued and coalesced, then sent when the list is {@link #flush flushed}
+ * at the end of each tick; for 1.19.3+ clients, all queued changes are sent as one packet per action.
+ */
+public class ShadowTabList {
+
+    private static final int LISTED = 1;
+    private static final int DISPLAY_NAME = 1 << 1;
+    private static final int LATENCY = 1 << 2;
+    private static final int REMOVED = 1 << 3;
+
+    private final Player viewer;
+    private final Map<UUID, Entry> entries;
+    private final Map<UUID, Integer> pending;
+
+    public ShadowTabList(@NotNull Player viewer) {
+        this.viewer = viewer;
+        this.entries = new HashMap<>();
+        this.pending = new LinkedHashMap<>();
+    }
+
+    /**
+     * Add a player to the viewer's TAB list, or update their display name if they are already listed
+     *
+     * @param target      the player to list
+     * @param displayName the display name to show for the player
+     */
+    public synchronized void setEntry(@NotNull TabPlayer target, @NotNull Component displayName) {
+        final UUID uuid = target.getPlayer().getUniqueId();
+        final Entry shadow = entries.get(uuid);
+
+        // Entries can be removed by the backend server, so check the entry is still listed
+        if (shadow != null && displayName.equals(shadow.displayName()) && containsEntry(uuid)) {
+            return;
+        }
+
+        entries.put(uuid, new Entry(target.getPlayer().getGameProfile(), displayName,
+                shadow != null ? shadow.latency() : 0));
+        pending.put(uuid, LISTED);
+    }
+
+    /**
+     * Update the display name of a player in the viewer's TAB list, if they are listed and it has changed
+     *
+     * @param uuid        the UUID of the listed player
+     * @param displayName the new display name
+     */
+    public synchronized void updateDisplayName(@NotNull UUID uuid, @NotNull Component displayName) {
+        final Entry shadow = entries.get(uuid);
+        if (shadow != null && displayName.equals(shadow.displayName()) || isPending(uuid, REMOVED)) {
+            return;
+        }
+
+        entries.put(uuid, shadow != null ? shadow.withDisplayName(displayName) : new Entry(null, displayName, -1));
+        pending.merge(uuid, DISPLAY_NAME, (a, b) -> a | b);
+    }
+
+    /**
+     * Update the latency of a player in the viewer's TAB list, if they are listed and it has changed
+     *
+     * @param uuid    the UUID of the listed player
+     * @param latency the new latency, in milliseconds
+     */
+    public synchronized void updateLatency(@NotNull UUID uuid, int latency) {
+        final Entry shadow = entries.get(uuid);
+        if (shadow != null && shadow.latency() == latency || isPending(uuid, REMOVED)) {
+            return;
+        }
+
+        entries.put(uuid, shadow != null ? shadow.withLatency(latency) : new Entry(null, null, latency));
+        pending.merge(uuid, LATENCY, (a, b) -> a | b);
+    }
+
+    /**
+     * Remove a player from the viewer's TAB list
+     *
+     * @param uuid the UUID of the player to remove
+     */
+    public synchronized void removeEntry(@NotNull UUID uuid) {
+        entries.remove(uuid);
+        pending.put(uuid, REMOVED);
+    }
+
+    /**
+     * Returns whether a player is currently listed, or queued to be listed, in the viewer's TAB list
+     *
+     * @param uuid the UUID of the player
+     * @return {@code true} if the player is listed
+     */
+    public synchronized boolean containsEntry(@NotNull UUID uuid) {
+        if (isPending(uuid, LISTED)) {
+            return true;
+        }
+        return !isPending(uuid, REMOVED) && viewer.getTabList().containsEntry(uuid);
+    }
+
+    /**
+     * Forget all entries and queued changes, for when the viewer's TAB list has been cleared by the proxy
+     */
+    public synchronized void clear() {
+        entries.clear();
+        pending.clear();
+    }
+
+    /**
+     * Send all queued changes to the viewer
+     *
+     * @param plugin the plugin instance
+     */
+    public synchronized void flush(@NotNull Velocitab plugin) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (!viewer.isActive()) {
+            clear();
+            return;
+        }
+
+        try {
+            if (canBatch()) {
+                flushBatched((ConnectedPlayer) viewer);
+            } else {
+                flushIndividually();
+            }
+        } catch (Throwable e) {
+            plugin.log(Level.ERROR, "Failed to send TAB list updates to " + viewer.getUsername(), e);
+        } finally {
+            pending.clear();
+        }
+    }
+
+    // Whether the viewer's client and TAB list implementation support sending batched player info packets
+    private boolean canBatch() {
+        return viewer instanceof ConnectedPlayer connected
+                && connected.getProtocolVersion().compareTo(ProtocolVersion.MINECRAFT_1_19_3) >= 0
+                && connected.getTabList() instanceof VelocityTabList
+                && connected.getConnection().getState() == StateRegistry.PLAY;
+    }
+
+    private void flushBatched(@NotNull ConnectedPlayer connected) {
+        final VelocityTabList tabList = (VelocityTabList) connected.getTabList();
+        final List<UUID> removed = new ArrayList<>();
+        final List<UpsertPlayerInfo.Entry> added = new ArrayList<>();
+        final List<UpsertPlayerInfo.Entry> renamed = new ArrayList<>();
+        final List<UpsertPlayerInfo.Entry> latencies = new ArrayList<>();
+
+        pending.forEach((uuid, changes) -> {
+            final boolean listed = tabList.containsEntry(uuid);
+            if ((changes & REMOVED) != 0) {
+                if (listed) {
+                    removed.add(uuid);
+                }
+                return;
+            }
+
+            final Entry entry = entries.get(uuid);
+            if (entry == null) {
+                return;
+            }
+            if (!listed) {
+                if ((changes & LISTED) != 0 && entry.profile() != null) {
+                    final UpsertPlayerInfo.Entry info = new UpsertPlayerInfo.Entry(uuid);
+                    info.setProfile(entry.profile());
+                    info.setListed(true);
+                    info.setLatency(Math.max(0, entry.latency()));
+                    info.setGameMode(0);
+                    info.setDisplayName(entry.displayName());
+                    added.add(info);
+                } else {
+                    entries.remove(uuid);
+                }
+                return;
+            }
+
+            if ((changes & (LISTED | DISPLAY_NAME)) != 0) {
+                final UpsertPlayerInfo.Entry info = new UpsertPlayerInfo.Entry(uuid);
+                info.setDisplayName(entry.displayName());
+                renamed.add(info);
+            }
+            if ((changes & LATENCY) != 0) {
+                final UpsertPlayerInfo.Entry info = new UpsertPlayerInfo.Entry(uuid);
+                info.setLatency(entry.latency());
+                latencies.add(info);
+            }
+        });
+
+        if (!removed.isEmpty()) {
+            final RemovePlayerInfo packet = new RemovePlayerInfo(removed);
+            tabList.processRemove(packet);
+            connected.getConnection().write(packet);
+        }
+        sendUpsert(connected, tabList, EnumSet.of(UpsertPlayerInfo.Action.ADD_PLAYER,
+                UpsertPlayerInfo.Action.UPDATE_LISTED,
+                UpsertPlayerInfo.Action.UPDATE_LATENCY,
+                UpsertPlayerInfo.Action.UPDATE_GAME_MODE,
+                UpsertPlayerInfo.Action.UPDATE_DISPLAY_NAME), added);
+        sendUpsert(connected, tabList, EnumSet.of(UpsertPlayerInfo.Action.UPDATE_DISPLAY_NAME), renamed);
+        sendUpsert(connected, tabList, EnumSet.of(UpsertPlayerInfo.Action.UPDATE_LATENCY), latencies);
+    }
+
+    // Update Velocity's state for the entries without it sending packets, then send them as one packet
+    private void sendUpsert(@NotNull ConnectedPlayer connected, @NotNull VelocityTabList tabList,
+                            @NotNull EnumSet<UpsertPlayerInfo.Action> actions,
+                            @NotNull List<UpsertPlayerInfo.Entry> infoEntries) {
+        if (infoEntries.isEmpty()) {
+            return;
+        }
+        final UpsertPlayerInfo packet = new UpsertPlayerInfo(actions, infoEntries);
+        tabList.processUpdate(packet);
+        connected.getConnection().write(packet);
+    }
+
+    private void flushIndividually() {
+        final TabList tabList = viewer.getTabList();
+        pending.forEach((uuid, changes) -> {
+            if ((changes & REMOVED) != 0) {
+                tabList.removeEntry(uuid);
+                return;
+            }
+
+            final Entry entry = entries.get(uuid);
+            if (entry == null) {
+                return;
+            }
+            final Optional<TabListEntry> existing = tabList.getEntry(uuid);
+            if (existing.isEmpty()) {
+                if ((changes & LISTED) != 0 && entry.profile() != null) {
+                    tabList.addEntry(TabListEntry.builder()
+                            .profile(entry.profile())
+                            .displayName(entry.displayName())
+                            .latency(Math.max(0, entry.latency()))
+                            .tabList(tabList)
+                            .build());
+                } else {
+                    entries.remove(uuid);
+                }
+                return;
+            }
+
+            if ((changes & (LISTED | DISPLAY_NAME)) != 0) {
+                existing.get().setDisplayName(entry.displayName());
+            }
+            if ((changes & LATENCY) != 0) {
+                existing.get().setLatency(entry.latency());
+            }
+        });
+    }
+
+    private boolean isPending(@NotNull UUID uuid, int change) {
+        return (pending.getOrDefault(uuid, 0) & change) != 0;
+    }
+
+    /**
+     * What was last sent, or is queued to be sent, to the viewer for a listed player
+     *
+     * @param profile     the profile of the player, if they were listed by Velocitab
+     * @param displayName the display name
+     * @param latency     the latency, or {@code -1} if not known
+     */
+    private record Entry(@Nullable GameProfile profile, @Nullable Component displayName, int latency) {
+
+        @NotNull
+        private Entry withDisplayName(@Nullable Component displayName) {
+            return new Entry(profile, displayName, latency);
+        }
+
+        @NotNull
+        private Entry withLatency(int latency) {
+            return new Entry(profile, displayName, latency);
+        }
+
+    }
+
+}
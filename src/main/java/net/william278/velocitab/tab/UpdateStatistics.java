@@ -0,0 +1,116 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.tab;
+
+import net.william278.velocitab.player.TabPlayer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how many player outputs were skipped, recomputed and resent during each periodic TAB list update
+ */
+public class UpdateStatistics {
+
+    private static final int OUTPUTS = TabPlayer.Output.values().length;
+    private final AtomicLong cycles;
+    private final AtomicIntegerArray skipped;
+    private final AtomicIntegerArray recomputed;
+    private final AtomicIntegerArray sent;
+    private volatile Cycle lastCycle;
+
+    public UpdateStatistics() {
+        this.cycles = new AtomicLong();
+        this.skipped = new AtomicIntegerArray(OUTPUTS);
+        this.recomputed = new AtomicIntegerArray(OUTPUTS);
+        this.sent = new AtomicIntegerArray(OUTPUTS);
+        this.lastCycle = new Cycle(0, new EnumMap<>(TabPlayer.Output.class));
+    }
+
+    /**
+     * Publish the counters of the current cycle as the last completed cycle, and start counting a new one
+     */
+    public void nextCycle() {
+        final Map<TabPlayer.Output, Counts> counts = new EnumMap<>(TabPlayer.Output.class);
+        for (TabPlayer.Output output : TabPlayer.Output.values()) {
+            final int i = output.ordinal();
+            counts.put(output, new Counts(skipped.getAndSet(i, 0), recomputed.getAndSet(i, 0), sent.getAndSet(i, 0)));
+        }
+        lastCycle = new Cycle(cycles.getAndIncrement(), counts);
+    }
+
+    // An output was clean and contained no dynamic placeholders, so was not recomputed
+    public void skipped(@NotNull TabPlayer.Output output) {
+        skipped.incrementAndGet(output.ordinal());
+    }
+
+    // An output was recomputed
+    public void recomputed(@NotNull TabPlayer.Output output) {
+        recomputed.incrementAndGet(output.ordinal());
+    }
+
+    // A recomputed output had changed and was sent to clients
+    public void sent(@NotNull TabPlayer.Output output) {
+        sent.incrementAndGet(output.ordinal());
+    }
+
+    /**
+     * Get the counters of the last completed update cycle
+     *
+     * @return the last cycle
+     */
+    @NotNull
+    public Cycle getLastCycle() {
+        return lastCycle;
+    }
+
+    /**
+     * The counters of a completed update cycle
+     *
+     * @param number the number of the cycle since the TAB list was loaded
+     * @param counts the counters for each output
+     */
+    public record Cycle(long number, @NotNull Map<TabPlayer.Output, Counts> counts) {
+
+        @NotNull
+        public Counts get(@NotNull TabPlayer.Output output) {
+            return counts.getOrDefault(output, new Counts(0, 0, 0));
+        }
+
+        public int totalSkipped() {
+            return counts.values().stream().mapToInt(Counts::skipped).sum();
+        }
+
+    }
+
+    /**
+     * Counters for one output in an update cycle
+     *
+     * @param skipped    the number of times the output was not recomputed
+     * @param recomputed the number of times the output was recomputed
+     * @param sent       the number of times a recomputed output changed and was sent
+     */
+    public record Counts(int skipped, int recomputed, int sent) {
+    }
+
+}
@@ -36,4 +36,9 @@ public final class DefaultVanishIntegration implements VanishIntegration {
         return false;
     }
 
+    @Override
+    public boolean isVisibleUnlessVanished() {
+        return true;
+    }
+
 }
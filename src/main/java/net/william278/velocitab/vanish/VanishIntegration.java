@@ -21,10 +21,50 @@ package net.william278.velocitab.vanish;
 
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 public interface VanishIntegration {
 
     boolean canSee(@NotNull String name, @NotNull String otherName);
 
     boolean isVanished(@NotNull String name);
 
+    /**
+     * Returns whether players who are not vanished can always be seen by everyone. Integrations which return
+     * {@code true} are only asked by {@link #canSee(String, String)} about vanished players, saving a lookup
+     * for each pair of players. By default, every pair is checked
+     *
+     * @return {@code true} if only vanished players can be hidden from viewers
+     */
+    default boolean isVisibleUnlessVanished() {
+        return false;
+    }
+
+    /**
+     * Get which of the given players are vanished. Integrations which can look up many players at once
+     * should override this; by default, each player is checked with {@link #isVanished(String)}
+     *
+     * @param names the usernames of the players to check
+     * @return the usernames of the players who are vanished
+     */
+    @NotNull
+    default Set<String> getVanished(@NotNull Collection<String> names) {
+        return names.stream().filter(this::isVanished).collect(Collectors.toSet());
+    }
+
+    /**
+     * Get which of the given viewers can see a player. Integrations which can look up many players at once
+     * should override this; by default, each viewer is checked with {@link #canSee(String, String)}
+     *
+     * @param name    the username of the player being seen
+     * @param viewers the usernames of the viewers to check
+     * @return the usernames of the viewers who can see the player
+     */
+    @NotNull
+    default Set<String> getViewersWhoCanSee(@NotNull String name, @NotNull Collection<String> viewers) {
+        return viewers.stream().filter(viewer -> canSee(viewer, name)).collect(Collectors.toSet());
+    }
+
 }
@@ -23,21 +23,46 @@ import com.velocitypowered.api.proxy.Player;
 import net.william278.velocitab.Velocitab;
 import net.william278.velocitab.player.TabPlayer;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 public class VanishManager {
 
+    /**
+     * How long a cached vanish state or visibility is used for, in milliseconds, so changes made by an
+     * integration outside of the API are picked up even when the TAB list is not updated periodically
+     */
+    private static final long CACHE_TIME = 1000;
+
     private final Velocitab plugin;
     private VanishIntegration integration;
+    /**
+     * Cached vanish states, by username
+     */
+    private final Map<String, Cached> vanished;
+    /**
+     * Cached visibility of players, by the username of the player being seen and then of the viewer
+     */
+    private final Map<String, Map<String, Cached>> visibility;
+    /**
+     * When expired entries were last evicted, so that they are evicted at most once per {@link #CACHE_TIME}
+     */
+    private final AtomicLong lastEviction = new AtomicLong();
 
     public VanishManager(@NotNull Velocitab plugin) {
         this.plugin = plugin;
+        this.vanished = new ConcurrentHashMap<>();
+        this.visibility = new ConcurrentHashMap<>();
         setIntegration(new DefaultVanishIntegration());
     }
 
     public void setIntegration(@NotNull VanishIntegration integration) {
         this.integration = integration;
+        invalidateAll();
     }
 
     @NotNull
@@ -45,15 +70,135 @@ public class VanishManager {
         return integration;
     }
 
+    /**
+     * Returns whether a player can see another player. If the integration opts in with
+     * {@link VanishIntegration#isVisibleUnlessVanished()}, it is only asked about vanished players.
+     * Results are cached briefly, and until the next update cycle or the player is vanished or unvanished.
+     *
+     * @param name      the username of the viewer
+     * @param otherName the username of the player being seen
+     * @return {@code true} if the viewer can see the player
+     */
     public boolean canSee(@NotNull String name, @NotNull String otherName) {
-        return integration.canSee(name, otherName);
+        if (integration.isVisibleUnlessVanished() && !isVanished(otherName)) {
+            return true;
+        }
+
+        // Ask the integration outside the map's locks, as it may be slow or call back into Velocitab
+        final Map<String, Cached> cached = visibility.computeIfAbsent(otherName, target -> new ConcurrentHashMap<>());
+        final Cached visible = cached.get(name);
+        if (visible != null && !visible.isExpired()) {
+            return visible.value();
+        }
+        final boolean canSee = integration.canSee(name, otherName);
+        cached.put(name, new Cached(canSee));
+        evictExpired();
+        return canSee;
     }
 
     public boolean isVanished(@NotNull String name) {
-        return integration.isVanished(name);
+        final Cached cached = vanished.get(name);
+        if (cached != null && !cached.isExpired()) {
+            return cached.value();
+        }
+        final boolean isVanished = integration.isVanished(name);
+        vanished.put(name, new Cached(isVanished));
+        evictExpired();
+        return isVanished;
+    }
+
+    /**
+     * Get which of the given players are vanished, looking up uncached players in one call to the integration
+     *
+     * @param names the usernames of the players to check
+     * @return the usernames of the players who are vanished
+     */
+    @NotNull
+    public Set<String> getVanished(@NotNull Collection<String> names) {
+        final List<String> uncached = names.stream().filter(name -> isUncached(vanished.get(name))).toList();
+        if (!uncached.isEmpty()) {
+            final Set<String> found = integration.getVanished(uncached);
+            uncached.forEach(name -> vanished.put(name, new Cached(found.contains(name))));
+            evictExpired();
+        }
+        return names.stream().filter(this::isVanished).collect(Collectors.toSet());
+    }
+
+    /**
+     * Get which of the given viewers can see a player, looking up uncached viewers in one call to the integration
+     *
+     * @param name    the username of the player being seen
+     * @param viewers the usernames of the viewers to check
+     * @return the usernames of the viewers who can see the player
+     */
+    @NotNull
+    public Set<String> getViewersWhoCanSee(@NotNull String name, @NotNull Collection<String> viewers) {
+        if (integration.isVisibleUnlessVanished() && !isVanished(name)) {
+            return new HashSet<>(viewers);
+        }
+
+        final Map<String, Cached> cached = visibility.computeIfAbsent(name, target -> new ConcurrentHashMap<>());
+        final Set<String> canSee = new HashSet<>();
+        final List<String> uncached = new ArrayList<>();
+        viewers.forEach(viewer -> {
+            final Cached visible = cached.get(viewer);
+            if (isUncached(visible)) {
+                uncached.add(viewer);
+            } else if (visible.value()) {
+                canSee.add(viewer);
+            }
+        });
+        if (!uncached.isEmpty()) {
+            final Set<String> found = integration.getViewersWhoCanSee(name, uncached);
+            uncached.forEach(viewer -> {
+                final boolean visible = found.contains(viewer);
+                cached.put(viewer, new Cached(visible));
+                if (visible) {
+                    canSee.add(viewer);
+                }
+            });
+            evictExpired();
+        }
+        return canSee;
+    }
+
+    /**
+     * Discard the cached vanish state and visibility of a player
+     *
+     * @param name the username of the player
+     */
+    public void invalidate(@NotNull String name) {
+        vanished.remove(name);
+        visibility.remove(name);
+        visibility.values().forEach(viewers -> viewers.remove(name));
+    }
+
+    /**
+     * Discard all cached vanish states and visibility, at the start of each update cycle
+     */
+    public void invalidateAll() {
+        vanished.clear();
+        visibility.clear();
+    }
+
+    // Remove expired entries as new ones are cached, so the caches stay bounded when there are no update cycles
+    private void evictExpired() {
+        final long now = System.currentTimeMillis();
+        final long last = lastEviction.get();
+        if (now - last < CACHE_TIME || !lastEviction.compareAndSet(last, now)) {
+            return;
+        }
+        vanished.values().removeIf(Cached::isExpired);
+        visibility.values().forEach(viewers -> viewers.values().removeIf(Cached::isExpired));
+        visibility.values().removeIf(Map::isEmpty);
+    }
+
+    private static boolean isUncached(@Nullable Cached cached) {
+        return cached == null || cached.isExpired();
     }
 
     public void vanishPlayer(@NotNull Player player) {
+        invalidate(player.getUsername());
         final Optional<TabPlayer> tabPlayer = plugin.getTabList().getTabPlayer(player);
         if (tabPlayer.isEmpty()) {
             plugin.log("Failed to vanish player " + player.getUsername() + " as they are not in the tab list");
@@ -65,6 +210,7 @@ public class VanishManager {
     }
 
     public void unVanishPlayer(@NotNull Player player) {
+        invalidate(player.getUsername());
         final Optional<TabPlayer> tabPlayer = plugin.getTabList().getTabPlayer(player);
         if (tabPlayer.isEmpty()) {
             plugin.log("Failed to unVanish player " + player.getUsername() + " as they are not in the tab list");
@@ -74,4 +220,20 @@ public class VanishManager {
         plugin.getTabList().unVanishPlayer(tabPlayer.get());
         plugin.getScoreboardManager().ifPresent(scoreboardManager -> scoreboardManager.unVanishPlayer(player));
     }
+
+    /**
+     * A cached result from the integration, and when it was looked up
+     */
+    private record Cached(boolean value, long cachedAt) {
+
+        private Cached(boolean value) {
+            this(value, System.currentTimeMillis());
+        }
+
+        private boolean isExpired() {
+            return System.currentTimeMillis() - cachedAt >= CACHE_TIME;
+        }
+
+    }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.config;
+
+import net.kyori.adventure.text.Component;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ComponentCacheTest {
+
+    private ComponentCache cache;
+    private AtomicInteger parses;
+    private Function<String, Component> parser;
+
+    @BeforeEach
+    void setup() {
+        this.cache = new ComponentCache();
+        this.parses = new AtomicInteger();
+        this.parser = text -> {
+            parses.incrementAndGet();
+            return Component.text(text);
+        };
+    }
+
+    @Test
+    void parsesEachTextOnce() {
+        assertEquals(Component.text("a"), cache.getComponent("a", parser));
+        assertEquals(Component.text("a"), cache.getComponent("a", parser));
+        assertEquals(1, parses.get());
+
+        final ComponentCache.Stats stats = cache.getComponentStats();
+        assertEquals(1, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(1, stats.size());
+        assertEquals(0.5, stats.hitRate());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedEntriesOverTheEntryLimit() {
+        cache.getComponent("first", parser);
+        cache.getComponent("second", parser);
+        for (int i = 0; i < 4095; i++) {
+            cache.getComponent("filler " + i, parser);
+            cache.getComponent("second", parser);
+        }
+        assertEquals(4096, cache.getComponentStats().size());
+
+        parses.set(0);
+        cache.getComponent("second", parser);
+        assertEquals(0, parses.get());
+        cache.getComponent("first", parser);
+        assertEquals(1, parses.get());
+    }
+
+    @Test
+    void evictsEntriesOverTheWeightLimit() {
+        final String value = "v".repeat(100_000);
+        for (int i = 0; i < 3; i++) {
+            final String text = i + "k".repeat(300_000);
+            cache.getLegacy(text, parsed -> value);
+        }
+        assertEquals(2, cache.getLegacyStats().size());
+
+        parses.set(0);
+        cache.getLegacy(0 + "k".repeat(300_000), parsed -> {
+            parses.incrementAndGet();
+            return value;
+        });
+        assertEquals(1, parses.get());
+    }
+
+    @Test
+    void clearDiscardsEveryEntry() {
+        cache.getComponent("a", parser);
+        cache.getLegacy("a", text -> text);
+        cache.clear();
+        assertEquals(0, cache.getComponentStats().size());
+        assertEquals(0, cache.getLegacyStats().size());
+
+        cache.getComponent("a", parser);
+        assertEquals(2, parses.get());
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.config;
+
+import net.william278.velocitab.player.TabPlayer;
+import org.junit.jupiter.api.Test;
+
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConfigDiffTest {
+
+    @Test
+    void allChangesEveryOutput() {
+        assertFalse(ConfigDiff.ALL.isEmpty());
+        assertEquals(EnumSet.allOf(TabPlayer.Output.class), ConfigDiff.ALL.getChangedOutputs("lobby", "default"));
+    }
+
+    @Test
+    void noneChangesNothing() {
+        assertTrue(ConfigDiff.NONE.isEmpty());
+        assertTrue(ConfigDiff.NONE.getChangedOutputs("lobby", "default").isEmpty());
+    }
+
+    @Test
+    void groupChangesOnlyAffectTheirGroup() {
+        final ConfigDiff diff = new ConfigDiff(false, false,
+                Map.of("survival", Set.of(TabPlayer.Output.HEADER_FOOTER)), Set.of());
+        assertFalse(diff.isEmpty());
+        assertEquals(Set.of(TabPlayer.Output.HEADER_FOOTER), diff.getChangedOutputs("smp", "survival"));
+        assertTrue(diff.getChangedOutputs("lobby", "default").isEmpty());
+    }
+
+    @Test
+    void sortingChangesAffectEveryTeam() {
+        final ConfigDiff diff = new ConfigDiff(false, true,
+                Map.of("survival", Set.of(TabPlayer.Output.DISPLAY_NAME)), Set.of());
+        assertEquals(Set.of(TabPlayer.Output.TEAM), diff.getChangedOutputs("lobby", "default"));
+        assertEquals(Set.of(TabPlayer.Output.TEAM, TabPlayer.Output.DISPLAY_NAME),
+                diff.getChangedOutputs("smp", "survival"));
+    }
+
+    @Test
+    void serverChangesAffectEveryOutputOfTheirPlayers() {
+        final ConfigDiff diff = new ConfigDiff(false, false, Map.of(), Set.of("smp"));
+        assertFalse(diff.isEmpty());
+        assertEquals(EnumSet.allOf(TabPlayer.Output.class), diff.getChangedOutputs("smp", "survival"));
+        assertTrue(diff.getChangedOutputs("lobby", "survival").isEmpty());
+    }
+
+}
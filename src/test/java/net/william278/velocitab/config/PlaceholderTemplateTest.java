@@ -0,0 +1,119 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.config;
+
+import com.velocitypowered.api.proxy.Player;
+import net.william278.velocitab.Velocitab;
+import net.william278.velocitab.player.TabPlayer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class PlaceholderTemplateTest {
+
+    private Velocitab plugin;
+    private TabPlayer player;
+
+    @BeforeEach
+    void setup() {
+        this.plugin = mock(Velocitab.class);
+        final Player velocityPlayer = mock(Player.class);
+        when(velocityPlayer.getUsername()).thenReturn("Steve");
+        this.player = mock(TabPlayer.class);
+        when(player.getPlayer()).thenReturn(velocityPlayer);
+        when(player.getCustomName()).thenReturn(Optional.empty());
+    }
+
+    @Test
+    void compilesEachFormatOnce() {
+        assertSame(PlaceholderTemplate.of("%username%"), PlaceholderTemplate.of("%username%"));
+    }
+
+    @Test
+    void rendersLiteralText() {
+        final PlaceholderTemplate template = PlaceholderTemplate.of("Welcome to the server");
+        assertTrue(template.getPlaceholders().isEmpty());
+        assertFalse(template.hasExternalPlaceholders());
+        assertFalse(template.isDynamic());
+        assertEquals(Placeholder.Scope.GLOBAL, template.getScope());
+        assertEquals("Welcome to the server", template.render(plugin, player));
+    }
+
+    @Test
+    void rendersInternalPlaceholders() {
+        final PlaceholderTemplate template = PlaceholderTemplate.of("[%username%] joined");
+        assertEquals(Set.of(Placeholder.USERNAME), template.getPlaceholders());
+        assertFalse(template.hasExternalPlaceholders());
+        assertFalse(template.isDynamic());
+        assertEquals(Placeholder.Scope.PLAYER, template.getScope());
+        assertEquals("[Steve] joined", template.render(plugin, player));
+    }
+
+    @Test
+    void recordsDynamicPlaceholders() {
+        final PlaceholderTemplate template = PlaceholderTemplate.of("%players_online% online");
+        assertTrue(template.isDynamic());
+        assertEquals(Placeholder.Scope.GLOBAL, template.getScope());
+    }
+
+    @Test
+    void leavesExternalPlaceholdersForPapi() {
+        final PlaceholderTemplate template = PlaceholderTemplate.of("%luckperms_prefix% %username%");
+        assertEquals(Set.of(Placeholder.USERNAME), template.getPlaceholders());
+        assertEquals(List.of("%luckperms_prefix%"), template.getExternalPlaceholders());
+        assertTrue(template.hasExternalPlaceholders());
+        assertTrue(template.isDynamic());
+        assertEquals(Placeholder.Scope.EXTERNAL, template.getScope());
+        assertEquals("%luckperms_prefix% Steve", template.render(plugin, player));
+    }
+
+    @Test
+    void treatsUnmatchedPercentSignsAsText() {
+        final PlaceholderTemplate template = PlaceholderTemplate.of("50% of %username%");
+        assertEquals(Set.of(Placeholder.USERNAME), template.getPlaceholders());
+        assertTrue(template.getExternalPlaceholders().isEmpty());
+        assertFalse(template.hasExternalPlaceholders());
+        assertEquals("50% of Steve", template.render(plugin, player));
+    }
+
+    @Test
+    void listsEachExternalPlaceholder() {
+        final PlaceholderTemplate template = PlaceholderTemplate.of("%a%%b% %% %server%");
+        assertEquals(List.of("%a%", "%b%"), template.getExternalPlaceholders());
+        assertEquals(Set.of(Placeholder.SERVER), template.getPlaceholders());
+    }
+
+    @Test
+    void retainsOnlyFormatsStillInUse() {
+        final PlaceholderTemplate kept = PlaceholderTemplate.of("kept %username%");
+        final PlaceholderTemplate dropped = PlaceholderTemplate.of("dropped %username%");
+        PlaceholderTemplate.retainAll(Set.of("kept %username%"));
+        assertSame(kept, PlaceholderTemplate.of("kept %username%"));
+        assertNotSame(dropped, PlaceholderTemplate.of("dropped %username%"));
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.hook;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PAPIProxyBridgeHookTest {
+
+    @Test
+    void batchesWellFormedInputs() {
+        assertTrue(PAPIProxyBridgeHook.isBatchable("plain text"));
+        assertTrue(PAPIProxyBridgeHook.isBatchable("%luckperms_prefix%"));
+        assertTrue(PAPIProxyBridgeHook.isBatchable("%luckperms_prefix% and %vault_eco_balance%"));
+    }
+
+    @Test
+    void doesNotBatchUnmatchedPercentSigns() {
+        assertFalse(PAPIProxyBridgeHook.isBatchable("50%"));
+        assertFalse(PAPIProxyBridgeHook.isBatchable("%luckperms_prefix% at 50%"));
+    }
+
+    @Test
+    void doesNotBatchEmptyPairs() {
+        assertFalse(PAPIProxyBridgeHook.isBatchable("%%"));
+        assertFalse(PAPIProxyBridgeHook.isBatchable("%%luckperms_prefix%"));
+    }
+
+    @Test
+    void doesNotBatchInputsContainingTheDelimiter() {
+        assertFalse(PAPIProxyBridgeHook.isBatchable("a\u001Eb"));
+    }
+
+}
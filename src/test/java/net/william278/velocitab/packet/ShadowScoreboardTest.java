@@ -0,0 +1,159 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.packet;
+
+import com.velocitypowered.api.proxy.Player;
+import net.william278.velocitab.Velocitab;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ShadowScoreboardTest {
+
+    private Velocitab plugin;
+    private ShadowScoreboard scoreboard;
+
+    @BeforeEach
+    void setup() {
+        this.plugin = mock(Velocitab.class);
+        this.scoreboard = new ShadowScoreboard(mock(Player.class));
+    }
+
+    @Test
+    void createsTeamOnce() {
+        final List<UpdateTeamsPacket> created = scoreboard.setTeam(plugin, "Steve", team("a", "[A] "));
+        assertEquals(1, created.size());
+        assertEquals(UpdateTeamsPacket.UpdateMode.CREATE_TEAM, created.get(0).mode());
+        assertEquals(List.of("Steve"), created.get(0).entities());
+
+        assertTrue(scoreboard.setTeam(plugin, "Steve", team("a", "[A] ")).isEmpty());
+        assertEquals("a", scoreboard.getTeam("Steve"));
+    }
+
+    @Test
+    void updatesChangedTeamWithoutRecreatingIt() {
+        scoreboard.setTeam(plugin, "Steve", team("a", "[A] "));
+
+        final List<UpdateTeamsPacket> updated = scoreboard.setTeam(plugin, "Steve", team("a", "[B] "));
+        assertEquals(1, updated.size());
+        assertEquals(UpdateTeamsPacket.UpdateMode.UPDATE_INFO, updated.get(0).mode());
+        assertEquals("[B] ", updated.get(0).prefix());
+    }
+
+    @Test
+    void addsMembersToExistingTeam() {
+        scoreboard.setTeam(plugin, "Steve", team("a", ""));
+
+        final List<UpdateTeamsPacket> added = scoreboard.setTeam(plugin, "Alex", team("a", ""));
+        assertEquals(1, added.size());
+        assertEquals(UpdateTeamsPacket.UpdateMode.ADD_PLAYERS, added.get(0).mode());
+        assertEquals(List.of("Alex"), added.get(0).entities());
+    }
+
+    @Test
+    void removesTeamLeftEmptyByMove() {
+        scoreboard.setTeam(plugin, "Steve", team("a", ""));
+
+        final List<UpdateTeamsPacket> moved = scoreboard.setTeam(plugin, "Steve", team("b", ""));
+        assertEquals(2, moved.size());
+        assertEquals(UpdateTeamsPacket.UpdateMode.CREATE_TEAM, moved.get(0).mode());
+        assertEquals("b", moved.get(0).teamName());
+        assertEquals(UpdateTeamsPacket.UpdateMode.REMOVE_TEAM, moved.get(1).mode());
+        assertEquals("a", moved.get(1).teamName());
+    }
+
+    @Test
+    void keepsTeamWithRemainingMembersOnMove() {
+        scoreboard.setTeam(plugin, "Steve", team("a", ""));
+        scoreboard.setTeam(plugin, "Alex", team("a", ""));
+
+        final List<UpdateTeamsPacket> moved = scoreboard.setTeam(plugin, "Steve", team("b", ""));
+        assertEquals(1, moved.size());
+        assertEquals(UpdateTeamsPacket.UpdateMode.CREATE_TEAM, moved.get(0).mode());
+        assertEquals("a", scoreboard.getTeam("Alex"));
+        assertEquals("b", scoreboard.getTeam("Steve"));
+    }
+
+    @Test
+    void removesMembersAndEmptyTeams() {
+        scoreboard.setTeam(plugin, "Steve", team("a", ""));
+        scoreboard.setTeam(plugin, "Alex", team("a", ""));
+
+        final List<UpdateTeamsPacket> removedMember = scoreboard.removeMember(plugin, "Steve");
+        assertEquals(1, removedMember.size());
+        assertEquals(UpdateTeamsPacket.UpdateMode.REMOVE_PLAYERS, removedMember.get(0).mode());
+        assertEquals(List.of("Steve"), removedMember.get(0).entities());
+
+        final List<UpdateTeamsPacket> removedTeam = scoreboard.removeMember(plugin, "Alex");
+        assertEquals(1, removedTeam.size());
+        assertEquals(UpdateTeamsPacket.UpdateMode.REMOVE_TEAM, removedTeam.get(0).mode());
+
+        assertTrue(scoreboard.removeMember(plugin, "Alex").isEmpty());
+        assertNull(scoreboard.getTeam("Alex"));
+    }
+
+    @Test
+    void retainsOnlyListedMembers() {
+        scoreboard.setTeamMembers(plugin, team("a", ""), List.of("Steve", "Alex"));
+        scoreboard.setTeam(plugin, "Notch", team("b", ""));
+        scoreboard.setTeam(plugin, "Jeb", team("c", ""));
+
+        final List<UpdateTeamsPacket> removed = scoreboard.retainMembers(plugin, Set.of("Steve", "Jeb"));
+        assertEquals(2, removed.size());
+        assertTrue(removed.stream().anyMatch(packet -> packet.mode() == UpdateTeamsPacket.UpdateMode.REMOVE_PLAYERS
+                && packet.entities().equals(List.of("Alex"))));
+        assertTrue(removed.stream().anyMatch(packet -> packet.mode() == UpdateTeamsPacket.UpdateMode.REMOVE_TEAM));
+        assertNull(scoreboard.getTeam("Notch"));
+        assertEquals("c", scoreboard.getTeam("Jeb"));
+
+        assertTrue(scoreboard.retainMembers(plugin, Set.of("Steve", "Jeb")).isEmpty());
+    }
+
+    @Test
+    void createsTeamWithAllMembersInOnePacket() {
+        final List<UpdateTeamsPacket> created = scoreboard.setTeamMembers(plugin, team("a", ""),
+                List.of("Steve", "Alex", "Notch"));
+        assertEquals(1, created.size());
+        assertEquals(UpdateTeamsPacket.UpdateMode.CREATE_TEAM, created.get(0).mode());
+        assertEquals(List.of("Steve", "Alex", "Notch"), created.get(0).entities());
+    }
+
+    @Test
+    void clearRemovesEveryTeam() {
+        scoreboard.setTeam(plugin, "Steve", team("a", ""));
+        scoreboard.setTeam(plugin, "Alex", team("b", ""));
+
+        final List<UpdateTeamsPacket> cleared = scoreboard.clear(plugin);
+        assertEquals(2, cleared.size());
+        assertTrue(cleared.stream().allMatch(packet -> packet.mode() == UpdateTeamsPacket.UpdateMode.REMOVE_TEAM));
+        assertNull(scoreboard.getTeam("Steve"));
+        assertEquals(1, scoreboard.setTeam(plugin, "Steve", team("a", "")).size());
+    }
+
+    private static TeamRegistry.Team team(String name, String prefix) {
+        return new TeamRegistry.Team(name, prefix, "", 15, UpdateTeamsPacket.NameTagVisibility.ALWAYS);
+    }
+
+}
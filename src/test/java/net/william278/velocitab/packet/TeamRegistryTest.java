@@ -0,0 +1,98 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.packet;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TeamRegistryTest {
+
+    private final UUID steve = UUID.randomUUID();
+    private final UUID alex = UUID.randomUUID();
+    private TeamRegistry registry;
+
+    @BeforeEach
+    void setup() {
+        this.registry = new TeamRegistry();
+    }
+
+    @Test
+    void reportsChangesOnlyWhenSomethingChanged() {
+        assertTrue(registry.assign(steve, team("a", "")));
+        assertFalse(registry.assign(steve, team("a", "")));
+        assertTrue(registry.assign(steve, team("a", "[A] ")));
+        assertEquals(Optional.of(team("a", "[A] ")), registry.getTeam(steve));
+    }
+
+    @Test
+    void sharesTeamsBetweenMembers() {
+        registry.assign(steve, team("a", ""));
+        assertTrue(registry.assign(alex, team("a", "")));
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    void freesTeamWhenLastMemberLeaves() {
+        registry.assign(steve, team("a", ""));
+        registry.assign(alex, team("a", ""));
+
+        registry.remove(steve);
+        assertEquals(1, registry.size());
+        assertTrue(registry.getTeam(steve).isEmpty());
+
+        registry.remove(alex);
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void freesPreviousTeamOnMove() {
+        registry.assign(steve, team("a", ""));
+
+        assertTrue(registry.assign(steve, team("b", "")));
+        assertEquals(1, registry.size());
+        assertEquals("b", registry.getTeam(steve).map(TeamRegistry.Team::name).orElseThrow());
+    }
+
+    @Test
+    void keepsPreviousTeamWithRemainingMembersOnMove() {
+        registry.assign(steve, team("a", ""));
+        registry.assign(alex, team("a", ""));
+
+        registry.assign(steve, team("b", ""));
+        assertEquals(2, registry.size());
+        assertEquals("a", registry.getTeam(alex).map(TeamRegistry.Team::name).orElseThrow());
+    }
+
+    @Test
+    void ignoresRemovingUnknownMembers() {
+        registry.remove(steve);
+        assertEquals(0, registry.size());
+    }
+
+    private static TeamRegistry.Team team(String name, String prefix) {
+        return new TeamRegistry.Team(name, prefix, "", 15, UpdateTeamsPacket.NameTagVisibility.ALWAYS);
+    }
+
+}
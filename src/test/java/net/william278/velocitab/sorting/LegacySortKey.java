@@ -0,0 +1,73 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.sorting;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The sort key building of the original {@link SortingManager}, kept as a reference for tests and benchmarks
+ */
+final class LegacySortKey {
+
+    private static final String DELIMITER = ":::";
+
+    private LegacySortKey() {
+    }
+
+    // Build the key for resolved sorting elements joined by the delimiter, without the unique suffix
+    static String of(String resolved) {
+        final List<String> values = Arrays.stream(resolved.split(DELIMITER))
+                .map(LegacySortKey::adaptValue)
+                .collect(Collectors.toList());
+        final String result = String.join("", values);
+        return result.length() > 12 ? result.substring(0, 12) : result;
+    }
+
+    private static String adaptValue(String value) {
+        if (value.isEmpty()) {
+            return "";
+        }
+        if (value.matches("[0-9]+")) {
+            return compressNumber(Integer.MAX_VALUE / 4d - Double.parseDouble(value));
+        }
+        if (value.length() > 6) {
+            return value.substring(0, 4);
+        }
+        return value;
+    }
+
+    private static String compressNumber(double number) {
+        int wholePart = (int) number;
+        final char decimalChar = (char) ((number - wholePart) * Character.MAX_VALUE);
+        final List<Character> charList = new ArrayList<>();
+        while (wholePart > 0) {
+            charList.add(0, (char) (wholePart % Character.MAX_VALUE));
+            wholePart /= Character.MAX_VALUE;
+        }
+        if (charList.isEmpty()) {
+            charList.add((char) 0);
+        }
+        return charList.stream().map(String::valueOf).collect(Collectors.joining()) + decimalChar;
+    }
+
+}
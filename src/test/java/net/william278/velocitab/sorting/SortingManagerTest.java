@@ -0,0 +1,117 @@
+/*
+ * This file is part of Velocitab, licensed under the Apache License 2.0.
+ *
+ *  Copyright (c) William278 <will27528@gmail.com>
+ *  Copyright (c) contributors
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package net.william278.velocitab.sorting;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SortingManagerTest {
+
+    @Test
+    void keysSortPlayersLikeOriginalKeys() {
+        final List<String> players = new ArrayList<>();
+        for (int weight : new int[]{0, 5, 10, 100, 999}) {
+            for (String name : new String[]{"Alex", "Bobby", "Carol", "Carla", "dave_", "Steve1", "Steve2", "Zed1", "notch_",
+                    "Jeb_Notch"}) {
+                players.add(weight + ":::" + name);
+            }
+        }
+
+        final List<String> byKey = new ArrayList<>(players);
+        byKey.sort(Comparator.comparing(SortingManagerTest::key));
+        final List<String> byLegacyKey = new ArrayList<>(players);
+        byLegacyKey.sort(Comparator.comparing(LegacySortKey::of));
+        assertEquals(byLegacyKey, byKey);
+    }
+
+    @Test
+    void numbersSortFromHighestToLowest() {
+        final double[] descending = {1e6, 10, 2, 1, 0.25, 0, -1, -5.5};
+        for (int i = 1; i < descending.length; i++) {
+            assertTrue(number(descending[i - 1]).compareTo(number(descending[i])) < 0,
+                    descending[i - 1] + " should sort before " + descending[i]);
+        }
+        assertEquals(number(42), value("42"));
+        assertEquals(number(-0.5), value("-0.5"));
+    }
+
+    @Test
+    void textSortsAlphabeticallyWithShorterTextFirst() {
+        final String[] ascending = {"", "a", "ab", "abc", "abcd", "abcde", "abcdef", "b", "Алла", "Борис"};
+        for (int i = 1; i < ascending.length; i++) {
+            assertTrue(value(ascending[i - 1]).compareTo(value(ascending[i])) < 0,
+                    ascending[i - 1] + " should sort before " + ascending[i]);
+        }
+        assertEquals(value("abcd"), value("abcdefg"));
+    }
+
+    @Test
+    void textSortsBeforeNumbers() {
+        for (String text : new String[]{"zzzz", "Žofie", "Жора", "東京", "\uD83D\uDE00"}) {
+            for (double number : new double[]{Double.MAX_VALUE, 0, -Double.MAX_VALUE}) {
+                assertTrue(value(text).compareTo(number(number)) < 0, text + " should sort before " + number);
+            }
+        }
+    }
+
+    @Test
+    void numbersAreNotEncodedAsSurrogates() {
+        for (double number : new double[]{Double.MAX_VALUE, 1e9, 1, 0, -1, -1e9, -Double.MAX_VALUE}) {
+            for (char c : number(number).toCharArray()) {
+                assertFalse(Character.isSurrogate(c), number + " was encoded with a surrogate");
+            }
+        }
+    }
+
+    // Build a key from resolved sorting element values the way SortingManager does, without the unique suffix
+    static String key(String resolved) {
+        final StringBuilder key = new StringBuilder();
+        for (String value : resolved.split(":::", -1)) {
+            if (key.length() > 12) {
+                break;
+            }
+            SortingManager.appendValue(value, key);
+        }
+        if (key.length() > 12) {
+            key.setLength(12);
+        }
+        return key.toString();
+    }
+
+    private static String number(double number) {
+        final StringBuilder key = new StringBuilder();
+        SortingManager.appendNumber(number, key);
+        return key.toString();
+    }
+
+    private static String value(String value) {
+        final StringBuilder key = new StringBuilder();
+        SortingManager.appendValue(value, key);
+        return key.toString();
+    }
+
+}